@@ -0,0 +1,164 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.CachedGenreStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.CachedMpaStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.ToIntFunction;
+
+// Последний созданный пользователь не получает ни друзей, ни лайков: бенчмарки используют его как пробного.
+public final class BenchmarkData {
+    private static final long SEED = 42;
+    private static final int BATCH_SIZE = 1000;
+    private static final int MPA_COUNT = 5;
+    private static final int GENRE_COUNT = 6;
+
+    private BenchmarkData() {
+    }
+
+    public static Storages createStorages(String kind) {
+        if ("memory".equals(kind)) {
+            return new Storages(new InMemoryFilmStorage(), new InMemoryUserStorage());
+        }
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:benchmark-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"));
+        populator.setSqlScriptEncoding("UTF-8");
+        populator.execute(dataSource);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        CachedGenreStorage genreStorage = new CachedGenreStorage(new GenreDbStorage(jdbcTemplate));
+        CachedMpaStorage mpaStorage = new CachedMpaStorage(new MpaDbStorage(jdbcTemplate));
+        genreStorage.load();
+        mpaStorage.load();
+        return new Storages(new FilmDbStorage(jdbcTemplate, genreStorage, mpaStorage), new UserDbStorage(jdbcTemplate));
+    }
+
+    public static int[] seedUsers(UserStorage userStorage, int users, int friendDegree) {
+        Random random = new Random(SEED);
+        int[] ids = new int[users];
+        int created = 0;
+        List<User> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= users; i++) {
+            batch.add(User.builder()
+                    .email("user" + i + "@filmorate.ru")
+                    .login("user" + i)
+                    .name("Пользователь " + i)
+                    .birthday(LocalDate.of(1970, 1, 1).plusDays(random.nextInt(15000)))
+                    .build());
+            if (batch.size() == BATCH_SIZE) {
+                created = collectIds(userStorage.createUsers(batch), User::getId, ids, created);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            collectIds(userStorage.createUsers(batch), User::getId, ids, created);
+        }
+
+        List<Friendship> friendships = new ArrayList<>(BATCH_SIZE);
+        int seededUsers = users - 1;
+        for (int i = 0; i < seededUsers; i++) {
+            for (int j = 0; j < Math.min(friendDegree, seededUsers - 1); j++) {
+                int friend = random.nextInt(seededUsers);
+                if (friend != i) {
+                    friendships.add(new Friendship(ids[i], ids[friend]));
+                }
+                if (friendships.size() == BATCH_SIZE) {
+                    userStorage.addFriends(friendships);
+                    friendships = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        if (!friendships.isEmpty()) {
+            userStorage.addFriends(friendships);
+        }
+        return ids;
+    }
+
+    public static int[] seedFilms(FilmStorage filmStorage, int films, int[] userIds, int likesPerFilm) {
+        Random random = new Random(SEED);
+        int[] ids = new int[films];
+        int created = 0;
+        List<Film> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= films; i++) {
+            Film film = Film.builder()
+                    .name("Фильм " + i)
+                    .description("Описание фильма " + i)
+                    .releaseDate(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(25000)))
+                    .duration(60 + random.nextInt(120))
+                    .mpa(new Mpa(1 + random.nextInt(MPA_COUNT), null))
+                    .build();
+            batch.add(film);
+            if (batch.size() == BATCH_SIZE) {
+                created = collectIds(filmStorage.createFilms(batch), Film::getId, ids, created);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            collectIds(filmStorage.createFilms(batch), Film::getId, ids, created);
+        }
+
+        List<Like> likes = new ArrayList<>(BATCH_SIZE);
+        int seededUsers = userIds.length - 1;
+        for (int filmId : ids) {
+            int filmLikes = random.nextInt(2 * likesPerFilm + 1);
+            for (int j = 0; j < filmLikes; j++) {
+                likes.add(new Like(userIds[random.nextInt(seededUsers)], filmId));
+                if (likes.size() == BATCH_SIZE) {
+                    filmStorage.addLikes(likes);
+                    likes = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        if (!likes.isEmpty()) {
+            filmStorage.addLikes(likes);
+        }
+        return ids;
+    }
+
+    private static <T> int collectIds(List<T> items, ToIntFunction<T> idExtractor, int[] ids, int offset) {
+        for (T item : items) {
+            ids[offset++] = idExtractor.applyAsInt(item);
+        }
+        return offset;
+    }
+
+    public static class Storages {
+        private final FilmStorage filmStorage;
+        private final UserStorage userStorage;
+
+        private Storages(FilmStorage filmStorage, UserStorage userStorage) {
+            this.filmStorage = filmStorage;
+            this.userStorage = userStorage;
+        }
+
+        public FilmStorage getFilmStorage() {
+            return filmStorage;
+        }
+
+        public UserStorage getUserStorage() {
+            return userStorage;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmSearch;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.LikeBuffer;
+import ru.yandex.practicum.filmorate.service.LikeEvent;
+import ru.yandex.practicum.filmorate.service.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.service.TrendingFilms;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FilmStorageBenchmark {
+    private static final int POPULAR_COUNT = 10;
+    private static final String SEARCH_QUERY = "фильм 777";
+
+    @Param({"db", "memory"})
+    public String storage;
+
+    @Param({"1000", "10000"})
+    public int films;
+
+    @Param({"1000"})
+    public int users;
+
+    @Param({"20"})
+    public int likesPerFilm;
+
+    private FilmStorage filmStorage;
+    private FilmService filmService;
+    private LikeBuffer likeBuffer;
+    private int[] filmIds;
+    private int probeUserId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.Storages storages = BenchmarkData.createStorages(storage);
+        filmStorage = storages.getFilmStorage();
+        int[] userIds = BenchmarkData.seedUsers(storages.getUserStorage(), users, 0);
+        filmIds = BenchmarkData.seedFilms(filmStorage, films, userIds, likesPerFilm);
+        PopularityLeaderboard leaderboard = new PopularityLeaderboard(filmStorage);
+        FilmSearch filmSearch = new FilmSearch(filmStorage);
+        filmSearch.rebuild();
+        leaderboard.rebuild();
+        filmService = new FilmService(filmStorage, storages.getUserStorage(), event -> {
+            if (event instanceof LikeEvent) {
+                leaderboard.onLike((LikeEvent) event);
+            }
+        }, new LikeBuffer(filmStorage, event -> { }, false, 1000, 10000, 200), leaderboard,
+                new TrendingFilms(filmStorage), filmSearch);
+        probeUserId = userIds[userIds.length - 1];
+        likeBuffer = new LikeBuffer(filmStorage, event -> { }, true, 1000, 10000, 200);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        likeBuffer.shutdown();
+    }
+
+    @Benchmark
+    public Film getFilmById() {
+        return filmStorage.getFilmById(randomFilmId());
+    }
+
+    @Benchmark
+    public List<Film> getAllFilms() {
+        return filmStorage.getAllFilms();
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilms() {
+        return filmService.getPopularFilms(POPULAR_COUNT);
+    }
+
+    // Тот же топ запросом к хранилищу, без рейтинга в памяти
+    @Benchmark
+    public List<Film> getPopularFilmsFromStorage() {
+        return filmStorage.getPopularFilms(POPULAR_COUNT);
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilmsByMpaAndYear() {
+        return filmService.getPopularFilms(POPULAR_COUNT, null, 1, 1990);
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilmsByMpaAndYearFromStorage() {
+        return filmStorage.getPopularFilms(POPULAR_COUNT, null, 1, 1990);
+    }
+
+    @Benchmark
+    public List<Film> searchFilms() {
+        return filmService.searchFilms(SEARCH_QUERY, POPULAR_COUNT);
+    }
+
+    // Тот же поиск просмотром всех фильмов
+    @Benchmark
+    public List<Film> searchFilmsByScan() {
+        return filmStorage.getAllFilms().stream()
+                .filter(film -> film.getName().toLowerCase().contains(SEARCH_QUERY))
+                .limit(POPULAR_COUNT)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Film addAndRemoveLike() {
+        int filmId = randomFilmId();
+        filmService.addLike(filmId, probeUserId);
+        return filmService.removeLike(filmId, probeUserId);
+    }
+
+    @Benchmark
+    public int addAndRemoveBufferedLike() {
+        int filmId = randomFilmId();
+        likeBuffer.addLike(probeUserId, filmId);
+        likeBuffer.removeLike(probeUserId, filmId);
+        return likeBuffer.getPendingCount();
+    }
+
+    private int randomFilmId() {
+        return filmIds[ThreadLocalRandom.current().nextInt(filmIds.length)];
+    }
+}
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Размер оценок одного фильма в памяти: запускать с -prof gc и смотреть gc.alloc.rate.norm.
+// Коллекции создаются сразу нужного размера, поэтому выделенная память совпадает с занятой, например:
+// mvn -Pbenchmark test-compile exec:exec -Djmh.args="-f 1 -prof gc ModelFootprintBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModelFootprintBenchmark {
+    @Param({"1000", "100000", "500000"})
+    public int likes;
+
+    private int[] userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        userIds = IntStream.range(0, likes).map(i -> 1000 + i * 3).toArray();
+    }
+
+    // Прежнее представление оценок: HashSet<Integer>
+    @Benchmark
+    public Set<Integer> boxedHashSet() {
+        Set<Integer> set = new HashSet<>((int) (userIds.length / 0.75f) + 1);
+        for (int userId : userIds) {
+            set.add(userId);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public Film sortedIntSet() {
+        Film film = Film.builder().build();
+        film.getLikes().addAll(userIds);
+        return film;
+    }
+}
@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserStorageBenchmark {
+    @Param({"db", "memory"})
+    public String storage;
+
+    @Param({"1000", "10000"})
+    public int users;
+
+    @Param({"50"})
+    public int friendDegree;
+
+    private UserStorage userStorage;
+    private UserService userService;
+    private int[] userIds;
+    private int probeUserId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        userStorage = BenchmarkData.createStorages(storage).getUserStorage();
+        userService = new UserService(userStorage);
+        userIds = BenchmarkData.seedUsers(userStorage, users, friendDegree);
+        probeUserId = userIds[userIds.length - 1];
+    }
+
+    @Benchmark
+    public User getUserById() {
+        return userStorage.getUserById(randomUserId());
+    }
+
+    @Benchmark
+    public List<User> getAllUsers() {
+        return userStorage.getAllUsers();
+    }
+
+    @Benchmark
+    public List<User> getUsersFriends() {
+        return userService.getUsersFriends(randomUserId());
+    }
+
+    @Benchmark
+    public List<User> getMutualFriends() {
+        return userService.getMutualFriends(randomUserId(), randomUserId());
+    }
+
+    @Benchmark
+    public User addAndRemoveFriend() {
+        int friendId = randomUserId();
+        userService.addFriend(probeUserId, friendId);
+        return userService.removeFriend(probeUserId, friendId);
+    }
+
+    private int randomUserId() {
+        return userIds[ThreadLocalRandom.current().nextInt(userIds.length - 1)];
+    }
+}
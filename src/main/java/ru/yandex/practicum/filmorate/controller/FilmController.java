@@ -1,26 +1,81 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.Batch;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.PopularityCheck;
+import ru.yandex.practicum.filmorate.service.EntityVersions;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.StorageExecutor;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/films")
 @Slf4j
 public class FilmController {
     private final FilmService filmService;
+    private final EntityVersions entityVersions;
+    private final StorageExecutor storageExecutor;
+    private final JsonFactory jsonFactory;
 
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService,
+                          EntityVersions entityVersions,
+                          StorageExecutor storageExecutor,
+                          ObjectMapper objectMapper) {
         this.filmService = filmService;
+        this.entityVersions = entityVersions;
+        this.storageExecutor = storageExecutor;
+        this.jsonFactory = objectMapper.getFactory();
     }
 
     @GetMapping
-    public List<Film> getFilms() {
-        log.info("Количество фильмов: {}", filmService.getAllFilms().size());
-        return filmService.getAllFilms();
+    public List<Film> getFilms(WebRequest request) {
+        if (request.checkNotModified(entityVersions.filmsTag())) {
+            return null;
+        }
+        List<Film> films = filmService.getAllFilms();
+        log.info("Количество фильмов: {}", films.size());
+        return films;
+    }
+
+    @GetMapping(params = "ids")
+    public Batch<Film> getFilmsByIds(@RequestParam List<Integer> ids) {
+        log.info("Получен GET-запрос: фильмы с id {}", ids);
+        Batch<Film> response = filmService.getFilmsByIds(ids);
+        log.info("Найдено фильмов: {}, не найдены id: {}", response.getItems().size(), response.getMissingIds());
+        return response;
+    }
+
+    @GetMapping(params = "size", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getFilmsPage(@RequestParam(defaultValue = "0") int after,
+                                                              @RequestParam int size) {
+        log.info("Получен GET-запрос: {} фильмов после id \"{}\"", size, after);
+        filmService.validatePageSize(size);
+        return json(outputStream -> {
+            try (JsonGenerator generator = jsonFactory.createGenerator(outputStream)) {
+                filmService.writeFilmsPage(after, size, generator);
+            }
+        });
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFilms() {
+        log.info("Получен GET-запрос: потоковая выгрузка фильмов");
+        return json(outputStream -> {
+            try (JsonGenerator generator = jsonFactory.createGenerator(outputStream)) {
+                filmService.writeAllFilms(generator);
+            }
+        });
     }
 
     @PostMapping
@@ -40,36 +95,97 @@ public class FilmController {
         return response;
     }
 
+    @GetMapping("/popular/verify")
+    public CompletableFuture<PopularityCheck> verifyPopularity() {
+        log.info("Получен GET-запрос: сверка рейтинга популярности с БД");
+        return storageExecutor.supply(() -> {
+            PopularityCheck response = filmService.verifyPopularity();
+            log.info("Сверено фильмов: {}, расхождений: {}", response.getCheckedFilms(),
+                    response.getMismatches().size());
+            return response;
+        });
+    }
+
     @GetMapping("{id}")
-    public Film getFilmById(@PathVariable("id") int filmId) {
+    public Film getFilmById(@PathVariable("id") int filmId, WebRequest request) {
         log.info("Получен GET-запрос: фильм с id \"{}\"", filmId);
+        if (request.checkNotModified(entityVersions.filmTag(filmId))) {
+            return null;
+        }
         Film response = filmService.getFilmById(filmId);
         log.info("Фильм с id \"{}\" : \"{}\"", filmId, response.getName());
         return response;
     }
 
     @PutMapping("{id}/like/{userId}")
-    public Film addLike(@PathVariable("id") int id,
-                             @PathVariable("userId") int userId) {
+    public ResponseEntity<Film> addLike(@PathVariable("id") int id,
+                                        @PathVariable("userId") int userId) {
         log.info("Получен PUT-запрос: пользователь с id \"{}\" оценил фильм с id \"{}\"", userId, id);
+        if (filmService.isLikeWriteBehind()) {
+            filmService.bufferLike(id, userId, true);
+            return ResponseEntity.accepted().build();
+        }
         Film response = filmService.addLike(id, userId);
         log.info("Обновлён список оценок фильма с id \"{}\".", id);
-        return response;
+        return ResponseEntity.ok(response);
     }
 
     @DeleteMapping("{id}/like/{userId}")
-    public Film removeLike(@PathVariable("id") int id,
-                                @PathVariable("userId") int userId) {
+    public ResponseEntity<Film> removeLike(@PathVariable("id") int id,
+                                           @PathVariable("userId") int userId) {
         log.info("Получен DELETE-запрос: пользователь с id \"{}\" убрал оценку фильма с id \"{}\"", userId, id);
+        if (filmService.isLikeWriteBehind()) {
+            filmService.bufferLike(id, userId, false);
+            return ResponseEntity.accepted().build();
+        }
         log.info("Обновлён список оценок фильма с id \"{}\".", id);
-        return filmService.removeLike(id, userId);
+        return ResponseEntity.ok(filmService.removeLike(id, userId));
     }
 
     @GetMapping("/popular")
-    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count) {
-        log.info("Получен GET-запрос: топ-{} фильмов по популярности.", count);
-        List<Film> response = filmService.getPopularFilms(count);
-        log.info("Самые популярные фильмы: {}", response);
-        return response;
+    public CompletableFuture<List<Film>> getPopularFilms(@RequestParam(defaultValue = "10") int count,
+                                                         @RequestParam(required = false) Integer genreId,
+                                                         @RequestParam(required = false) Integer mpaId,
+                                                         @RequestParam(required = false) Integer year,
+                                                         WebRequest request) {
+        log.info("Получен GET-запрос: топ-{} фильмов по популярности (жанр {}, MPA {}, год {}).",
+                count, genreId, mpaId, year);
+        if (request.checkNotModified(entityVersions.filmsTag())) {
+            return null;
+        }
+        return storageExecutor.supply(() -> {
+            List<Film> response = filmService.getPopularFilms(count, genreId, mpaId, year);
+            log.info("Самые популярные фильмы: {}", response);
+            return response;
+        });
+    }
+
+    @GetMapping("/search")
+    public CompletableFuture<List<Film>> searchFilms(@RequestParam String q,
+                                                     @RequestParam(defaultValue = "10") int count) {
+        log.info("Получен GET-запрос: поиск фильмов по запросу \"{}\"", q);
+        return storageExecutor.supply(() -> {
+            List<Film> response = filmService.searchFilms(q, count);
+            log.info("Найдено фильмов: {}", response.size());
+            return response;
+        });
+    }
+
+    @GetMapping("/trending")
+    public CompletableFuture<List<Film>> getTrendingFilms(@RequestParam(defaultValue = "24h") String window,
+                                                          @RequestParam(defaultValue = "10") int count) {
+        log.info("Получен GET-запрос: топ-{} фильмов по приросту оценок за {}", count, window);
+        return storageExecutor.supply(() -> {
+            List<Film> response = filmService.getTrendingFilms(window, count);
+            log.info("Фильмы в тренде: {}", response);
+            return response;
+        });
+    }
+
+    // Тело пишется в поток напрямую, поэтому тип содержимого выставляется явно
+    private static ResponseEntity<StreamingResponseBody> json(StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 }
@@ -6,7 +6,9 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.service.EntityVersions;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
 import java.util.List;
@@ -17,14 +19,21 @@ import java.util.List;
 @RequestMapping("/genres")
 public class GenreContoller {
     private final GenreService genreService;
+    private final EntityVersions entityVersions;
 
     @GetMapping("{id}")
-    public Genre getGenreById(@PathVariable("id") int id) {
+    public Genre getGenreById(@PathVariable("id") int id, WebRequest request) {
+        if (request.checkNotModified(entityVersions.referenceDataTag())) {
+            return null;
+        }
         return genreService.getGenreById(id);
     }
 
     @GetMapping
-    public List<Genre> getAllGenres() {
+    public List<Genre> getAllGenres(WebRequest request) {
+        if (request.checkNotModified(entityVersions.referenceDataTag())) {
+            return null;
+        }
         return genreService.getAllGenres();
     }
 }
@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.service.ImportService;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@Slf4j
+@RequiredArgsConstructor
+@RequestMapping("/import")
+public class ImportController {
+    private static final String NDJSON = "application/x-ndjson";
+    private final ImportService importService;
+
+    @PostMapping(value = "/films", consumes = NDJSON)
+    public ImportReport importFilms(InputStream body) throws IOException {
+        log.info("Получен POST-запрос: импорт фильмов");
+        return importService.importFilms(body);
+    }
+
+    @PostMapping(value = "/users", consumes = NDJSON)
+    public ImportReport importUsers(InputStream body) throws IOException {
+        log.info("Получен POST-запрос: импорт пользователей");
+        return importService.importUsers(body);
+    }
+
+    @PostMapping(value = "/likes", consumes = NDJSON)
+    public ImportReport importLikes(InputStream body) throws IOException {
+        log.info("Получен POST-запрос: импорт оценок");
+        return importService.importLikes(body);
+    }
+
+    @PostMapping(value = "/friends", consumes = NDJSON)
+    public ImportReport importFriendships(InputStream body) throws IOException {
+        log.info("Получен POST-запрос: импорт друзей");
+        return importService.importFriendships(body);
+    }
+}
@@ -6,7 +6,9 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.service.EntityVersions;
 import ru.yandex.practicum.filmorate.service.MpaService;
 
 import java.util.List;
@@ -17,14 +19,21 @@ import java.util.List;
 @RequestMapping("/mpa")
 public class MpaController {
     private final MpaService mpaService;
+    private final EntityVersions entityVersions;
 
     @GetMapping("{id}")
-    public Mpa getMpaById(@PathVariable("id") int id) {
+    public Mpa getMpaById(@PathVariable("id") int id, WebRequest request) {
+        if (request.checkNotModified(entityVersions.referenceDataTag())) {
+            return null;
+        }
         return mpaService.getMpaById(id);
     }
 
     @GetMapping
-    public List<Mpa> getMpas() {
+    public List<Mpa> getMpas(WebRequest request) {
+        if (request.checkNotModified(entityVersions.referenceDataTag())) {
+            return null;
+        }
         return mpaService.getAllMpas();
     }
 }
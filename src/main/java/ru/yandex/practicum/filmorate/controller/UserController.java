@@ -1,26 +1,82 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.Batch;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmRecommendationService;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
+import ru.yandex.practicum.filmorate.service.StorageExecutor;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/users")
 @Slf4j
 public class UserController {
     private final UserService userService;
+    private final RecommendationService recommendationService;
+    private final FilmRecommendationService filmRecommendationService;
+    private final StorageExecutor storageExecutor;
+    private final JsonFactory jsonFactory;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService,
+                          RecommendationService recommendationService,
+                          FilmRecommendationService filmRecommendationService,
+                          StorageExecutor storageExecutor,
+                          ObjectMapper objectMapper) {
         this.userService = userService;
+        this.recommendationService = recommendationService;
+        this.filmRecommendationService = filmRecommendationService;
+        this.storageExecutor = storageExecutor;
+        this.jsonFactory = objectMapper.getFactory();
     }
 
     @GetMapping
     public List<User> getUsers() {
-        log.info("Количество пользователей: {}", userService.getAllUsers().size());
-        return userService.getAllUsers();
+        List<User> users = userService.getAllUsers();
+        log.info("Количество пользователей: {}", users.size());
+        return users;
+    }
+
+    @GetMapping(params = "ids")
+    public Batch<User> getUsersByIds(@RequestParam List<Integer> ids) {
+        log.info("Получен GET-запрос: пользователи с id {}", ids);
+        Batch<User> response = userService.getUsersByIds(ids);
+        log.info("Найдено пользователей: {}, не найдены id: {}", response.getItems().size(),
+                response.getMissingIds());
+        return response;
+    }
+
+    @GetMapping(params = "size", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getUsersPage(@RequestParam(defaultValue = "0") int after,
+                                                              @RequestParam int size) {
+        log.info("Получен GET-запрос: {} пользователей после id \"{}\"", size, after);
+        userService.validatePageSize(size);
+        return json(outputStream -> {
+            try (JsonGenerator generator = jsonFactory.createGenerator(outputStream)) {
+                userService.writeUsersPage(after, size, generator);
+            }
+        });
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamUsers() {
+        log.info("Получен GET-запрос: потоковая выгрузка пользователей");
+        return json(outputStream -> {
+            try (JsonGenerator generator = jsonFactory.createGenerator(outputStream)) {
+                userService.writeAllUsers(generator);
+            }
+        });
     }
 
     @PostMapping
@@ -64,19 +120,48 @@ public class UserController {
     }
 
     @GetMapping("{id}/friends")
-    public List<User> getUserFriends(@PathVariable("id") int userId) {
+    public CompletableFuture<List<User>> getUserFriends(@PathVariable("id") int userId) {
         log.info("Получен GET-запрос: список друзей пользователя \"{}\"", userId);
-        List<User> response = userService.getUsersFriends(userId);
-        log.info("Друзья пользователя \"{}\": \"{}\"", userId, response);
-        return response;
+        return storageExecutor.supply(() -> {
+            List<User> response = userService.getUsersFriends(userId);
+            log.info("Друзья пользователя \"{}\": \"{}\"", userId, response);
+            return response;
+        });
     }
 
     @GetMapping("{id}/friends/common/{otherId}")
-    public List<User> getMutualFriends(@PathVariable("id") int userId,
-                                       @PathVariable("otherId") int otherId) {
+    public CompletableFuture<List<User>> getMutualFriends(@PathVariable("id") int userId,
+                                                          @PathVariable("otherId") int otherId) {
         log.info("Получен GET-запрос: общие друзья пользователей \"{}\" и \"{}\"", userId, otherId);
-        List<User> response = userService.getMutualFriends(userId, otherId);
-        log.info("Общие друзья пользователей \"{}\" и \"{}\": \"{}\"", userId, otherId, response);
+        return storageExecutor.supply(() -> {
+            List<User> response = userService.getMutualFriends(userId, otherId);
+            log.info("Общие друзья пользователей \"{}\" и \"{}\": \"{}\"", userId, otherId, response);
+            return response;
+        });
+    }
+
+    @GetMapping("{id}/recommendations")
+    public List<User> getRecommendedFriends(@PathVariable("id") int userId,
+                                            @RequestParam(defaultValue = "10") int count) {
+        log.info("Получен GET-запрос: рекомендации друзей для пользователя \"{}\"", userId);
+        List<User> response = recommendationService.recommendFriends(userId, count);
+        log.info("Рекомендованные друзья пользователя \"{}\": \"{}\"", userId, response);
         return response;
     }
+
+    @GetMapping("{id}/recommendations/films")
+    public List<Film> getRecommendedFilms(@PathVariable("id") int userId,
+                                          @RequestParam(defaultValue = "10") int count) {
+        log.info("Получен GET-запрос: рекомендации фильмов для пользователя \"{}\"", userId);
+        List<Film> response = filmRecommendationService.recommendFilms(userId, count);
+        log.info("Рекомендованные фильмы пользователя \"{}\": \"{}\"", userId, response);
+        return response;
+    }
+
+    // Тело пишется в поток напрямую, поэтому тип содержимого выставляется явно
+    private static ResponseEntity<StreamingResponseBody> json(StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
 }
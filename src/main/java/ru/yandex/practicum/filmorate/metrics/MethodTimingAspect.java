@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@Aspect
+@Component
+public class MethodTimingAspect {
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final Map<Class<?>, Map<Method, Timer>> timers = new ConcurrentHashMap<>();
+
+    // Реестр берётся лениво: аспект оборачивает хранилища, от которых сам реестр зависит через MeterBinder
+    public MethodTimingAspect(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Pointcut("within(ru.yandex.practicum.filmorate.controller..*) "
+            + "&& @within(org.springframework.web.bind.annotation.RestController)")
+    public void controllerMethod() {
+    }
+
+    @Pointcut("execution(* ru.yandex.practicum.filmorate.storage.film.FilmStorage.*(..)) "
+            + "|| execution(* ru.yandex.practicum.filmorate.storage.user.UserStorage.*(..)) "
+            + "|| execution(* ru.yandex.practicum.filmorate.storage.genre.GenreStorage.*(..)) "
+            + "|| execution(* ru.yandex.practicum.filmorate.storage.mpa.MpaStorage.*(..))")
+    public void storageMethod() {
+    }
+
+    @Around("controllerMethod()")
+    public Object timeController(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "controller");
+    }
+
+    @Around("storageMethod()")
+    public Object timeStorage(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "storage");
+    }
+
+    private Object time(ProceedingJoinPoint joinPoint, String layer) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Class<?> targetClass = joinPoint.getTarget().getClass();
+        Timer timer = timers.computeIfAbsent(targetClass, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, key -> Timer.builder("filmorate.method")
+                        .tag("layer", layer)
+                        .tag("class", targetClass.getSimpleName())
+                        .tag("method", key.getName())
+                        .register(meterRegistry.getObject()));
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.genre.CachedGenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.CachedMpaStorage;
+
+@Component
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
+public class ReferenceCacheMetrics {
+
+    public ReferenceCacheMetrics(MeterRegistry registry, CachedGenreStorage genreStorage, CachedMpaStorage mpaStorage) {
+        FunctionCounter.builder("filmorate.cache.hits", genreStorage, CachedGenreStorage::getHits)
+                .tag("cache", "genre")
+                .register(registry);
+        FunctionCounter.builder("filmorate.cache.misses", genreStorage, CachedGenreStorage::getMisses)
+                .tag("cache", "genre")
+                .register(registry);
+        FunctionCounter.builder("filmorate.cache.hits", mpaStorage, CachedMpaStorage::getHits)
+                .tag("cache", "mpa")
+                .register(registry);
+        FunctionCounter.builder("filmorate.cache.misses", mpaStorage, CachedMpaStorage::getMisses)
+                .tag("cache", "mpa")
+                .register(registry);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Set;
+
+// Соединения оборачиваются только внутри запроса, для которого запущен учёт SqlStats
+public class SqlStatsDataSource extends DelegatingDataSource {
+    private static final Set<String> STATEMENT_FACTORIES = Set.of("createStatement", "prepareStatement", "prepareCall");
+
+    public SqlStatsDataSource(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrapConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrapConnection(super.getConnection(username, password));
+    }
+
+    private Connection wrapConnection(Connection connection) {
+        SqlStats stats = SqlStats.current();
+        if (stats == null) {
+            return connection;
+        }
+        return proxy(Connection.class, connection, (method, result) -> {
+            if (STATEMENT_FACTORIES.contains(method.getName())) {
+                return proxy(method.getReturnType(), result, (statementMethod, statementResult) ->
+                        onStatementCall(stats, statementMethod, statementResult));
+            }
+            return result;
+        });
+    }
+
+    private Object onStatementCall(SqlStats stats, Method method, Object result) {
+        String name = method.getName();
+        if (!name.startsWith("execute")) {
+            return "getResultSet".equals(name) && result != null ? countRows(stats, (ResultSet) result) : result;
+        }
+        stats.addStatement();
+        if (result instanceof ResultSet) {
+            return countRows(stats, (ResultSet) result);
+        } else if (result instanceof Integer || result instanceof Long) {
+            stats.addRows(((Number) result).longValue());
+        } else if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                stats.addRows(count);
+            }
+        } else if (result instanceof long[]) {
+            for (long count : (long[]) result) {
+                stats.addRows(count);
+            }
+        }
+        return result;
+    }
+
+    private ResultSet countRows(SqlStats stats, ResultSet resultSet) {
+        return proxy(ResultSet.class, resultSet, (method, result) -> {
+            if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+                stats.addRows(1);
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, CallListener listener) {
+        return (T) Proxy.newProxyInstance(
+                SqlStatsDataSource.class.getClassLoader(),
+                new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    try {
+                        return listener.afterCall(method, method.invoke(target, args));
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    private interface CallListener {
+        Object afterCall(Method method, Object result);
+    }
+}
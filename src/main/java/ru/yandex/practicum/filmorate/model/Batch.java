@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+// Ответ на запрос нескольких сущностей по id: найденные - в порядке запроса, ненайденные id - отдельно
+@Data
+@AllArgsConstructor
+public class Batch<T> {
+    private List<T> items;
+    private List<Integer> missingIds;
+
+    // Повторы в запросе возвращаются один раз, на месте первого упоминания
+    public static <T> Batch<T> of(List<Integer> requestedIds, Collection<T> found, ToIntFunction<T> idOf) {
+        Map<Integer, T> foundById = new HashMap<>();
+        found.forEach(item -> foundById.put(idOf.applyAsInt(item), item));
+        List<T> items = new ArrayList<>();
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer id : new LinkedHashSet<>(requestedIds)) {
+            T item = foundById.get(id);
+            if (item == null) {
+                missingIds.add(id);
+            } else {
+                items.add(item);
+            }
+        }
+        return new Batch<>(items, missingIds);
+    }
+}
@@ -6,8 +6,6 @@ import lombok.Data;
 import java.time.LocalDate;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Set;
-import java.util.HashSet;
 import java.util.TreeSet;
 
 @Data
@@ -19,7 +17,7 @@ public class Film {
     private String description;
     private LocalDate releaseDate;
     private int duration;
-    private final Set<Integer> likes = new HashSet<>();
+    private final SortedIntSet likes = new SortedIntSet();
     private final TreeSet<Genre> genres = new TreeSet<>();
     private Mpa mpa;
 
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ImportReport {
+    private int imported;
+    private final List<LineError> errors = new ArrayList<>();
+
+    @Data
+    @AllArgsConstructor
+    public static class LineError {
+        private int line;
+        private String error;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class PopularityCheck {
+    private int checkedFilms;
+    private final List<Mismatch> mismatches = new ArrayList<>();
+
+    public boolean isConsistent() {
+        return mismatches.isEmpty();
+    }
+
+    @Data
+    public static class Mismatch {
+        private final int filmId;
+        private final int leaderboardCount;
+        private final int databaseCount;
+    }
+}
@@ -0,0 +1,178 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+// Множество id на отсортированном массиве int: около 4 байт на элемент вместо ~40 у HashSet<Integer>.
+// Хранилища читают id по возрастанию, поэтому вставка обычно сводится к дописыванию в конец
+@JsonSerialize(using = SortedIntSet.Serializer.class)
+public class SortedIntSet extends AbstractSet<Integer> {
+    private static final int[] EMPTY = new int[0];
+    private int[] values = EMPTY;
+    private int size;
+
+    public SortedIntSet() {
+    }
+
+    public SortedIntSet(int... ids) {
+        addAll(ids);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int id) {
+        return Arrays.binarySearch(values, 0, size, id) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains((int) (Integer) o);
+    }
+
+    public boolean add(int id) {
+        if (size > 0 && id <= values[size - 1]) {
+            int index = Arrays.binarySearch(values, 0, size, id);
+            if (index >= 0) {
+                return false;
+            }
+            insertAt(-index - 1, id);
+            return true;
+        }
+        insertAt(size, id);
+        return true;
+    }
+
+    @Override
+    public boolean add(Integer id) {
+        return add((int) id);
+    }
+
+    public boolean remove(int id) {
+        int index = Arrays.binarySearch(values, 0, size, id);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Integer && remove((int) (Integer) o);
+    }
+
+    // Пачка сортируется один раз и сливается с уже имеющимися id
+    public boolean addAll(int... ids) {
+        if (ids.length == 0) {
+            return false;
+        }
+        int[] merged = Arrays.copyOf(values, size + ids.length);
+        System.arraycopy(ids, 0, merged, size, ids.length);
+        Arrays.sort(merged);
+        int count = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (count == 0 || merged[count - 1] != merged[i]) {
+                merged[count++] = merged[i];
+            }
+        }
+        boolean changed = count != size;
+        values = count == merged.length ? merged : Arrays.copyOf(merged, count);
+        size = count;
+        return changed;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Integer> ids) {
+        if (ids instanceof SortedIntSet) {
+            SortedIntSet other = (SortedIntSet) ids;
+            return addAll(Arrays.copyOf(other.values, other.size));
+        }
+        return addAll(ids.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    @Override
+    public void clear() {
+        values = EMPTY;
+        size = 0;
+    }
+
+    public void forEachInt(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(values[i]);
+        }
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int next;
+            private boolean canRemove;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Integer next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                canRemove = true;
+                return values[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                canRemove = false;
+                removeAt(--next);
+            }
+        };
+    }
+
+    private void insertAt(int index, int id) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = id;
+        size++;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+    }
+
+    static class Serializer extends StdSerializer<SortedIntSet> {
+        Serializer() {
+            super(SortedIntSet.class);
+        }
+
+        @Override
+        public void serialize(SortedIntSet set, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            generator.writeArray(set.values, 0, set.size);
+        }
+    }
+}
@@ -5,9 +5,7 @@ import lombok.Data;
 
 import java.time.LocalDate;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 @Data
 @Builder
@@ -17,7 +15,7 @@ public class User {
     private String login;
     private String name;
     private LocalDate birthday;
-    private final Set<Integer> friends = new HashSet<>();
+    private final SortedIntSet friends = new SortedIntSet();
 
     public Map<String, Object> toMap() {
         Map<String, Object> userMap = new HashMap<>();
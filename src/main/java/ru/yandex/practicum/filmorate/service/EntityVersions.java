@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Версии сущностей для ETag. Счётчики живут только в памяти, поэтому в тег входит момент запуска:
+// после перезапуска все ранее выданные теги перестают совпадать
+@Component
+public class EntityVersions {
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong filmsVersion = new AtomicLong();
+    private final Map<Integer, Long> filmVersions = new ConcurrentHashMap<>();
+
+    // Версия меняется последней, когда рейтинги уже учли событие: иначе клиент может получить
+    // новый тег вместе со старым ответом и закэшировать его
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onFilmChanged(FilmEvent event) {
+        touchFilm(event.getFilmId());
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onLike(LikeEvent event) {
+        touchFilm(event.getFilmId());
+    }
+
+    public String filmTag(int filmId) {
+        return tag(filmVersions.getOrDefault(filmId, 0L));
+    }
+
+    public String filmsTag() {
+        return tag(filmsVersion.get());
+    }
+
+    // Жанры и рейтинги MPA меняются только вместе со схемой, то есть при перезапуске
+    public String referenceDataTag() {
+        return tag(0);
+    }
+
+    private void touchFilm(int filmId) {
+        filmVersions.merge(filmId, filmsVersion.incrementAndGet(), Math::max);
+    }
+
+    private String tag(long version) {
+        return "\"" + epoch + "-" + version + "\"";
+    }
+}
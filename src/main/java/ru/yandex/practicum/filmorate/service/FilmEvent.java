@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.Data;
+import ru.yandex.practicum.filmorate.model.Film;
+
+@Data
+public class FilmEvent {
+    private final int filmId;
+    // Фильм в том виде, в каком он записан: слушателям не нужно перечитывать его из хранилища
+    private final Film film;
+
+    public FilmEvent(Film film) {
+        this.filmId = film.getId();
+        this.film = film;
+    }
+}
@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmSimilarityModel;
+import ru.yandex.practicum.filmorate.storage.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class FilmRecommendationService {
+    private static final int MAX_RECOMMENDATIONS = 100;
+    private static final int MAX_CACHED_USERS = 10_000;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final long fullRebuildIntervalMs;
+    // Оценки, пришедшие после последнего обновления модели: пара -> есть ли лайк
+    private final Map<Long, Boolean> likeChanges = new LinkedHashMap<>();
+    // Вытесняются давно не запрашивавшиеся пользователи
+    private final Map<Integer, int[]> recommendations = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                    return size() > MAX_CACHED_USERS;
+                }
+            });
+    private volatile FilmSimilarityModel model;
+    private long modelBuiltAt;
+    private boolean approximate;
+
+    @Autowired
+    public FilmRecommendationService(FilmStorage filmStorage,
+                                     UserStorage userStorage,
+                                     @Value("${filmorate.recommendations.films.full-rebuild-interval-ms:600000}")
+                                     long fullRebuildIntervalMs) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.fullRebuildIntervalMs = fullRebuildIntervalMs;
+    }
+
+    public List<Film> recommendFilms(int userId, int count) {
+        if (count <= 0 || count > MAX_RECOMMENDATIONS) {
+            log.error("Количество рекомендаций должно быть от 1 до {}", MAX_RECOMMENDATIONS);
+            throw new ValidationException("Количество рекомендаций должно быть от 1 до " + MAX_RECOMMENDATIONS);
+        }
+        userStorage.checkUserId(userId);
+        int[] recommended = recommendations.get(userId);
+        if (recommended == null) {
+            int[] likedFilmIds = filmStorage.getLikedFilmIds(userId).stream()
+                    .mapToInt(Integer::intValue)
+                    .sorted()
+                    .toArray();
+            recommended = getModel().recommend(likedFilmIds, MAX_RECOMMENDATIONS);
+            recommendations.put(userId, recommended);
+        }
+        int[] filmIds = Arrays.copyOf(recommended, Math.min(count, recommended.length));
+        Map<Integer, Film> filmsById = filmStorage.getFilmsByIds(Arrays.stream(filmIds).boxed()
+                        .collect(Collectors.toList())).stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+        return Arrays.stream(filmIds)
+                .filter(filmsById::containsKey)
+                .mapToObj(filmsById::get)
+                .collect(Collectors.toList());
+    }
+
+    @EventListener
+    public void onLike(LikeEvent event) {
+        synchronized (likeChanges) {
+            likeChanges.put(LikeMatrix.pair(event.getUserId(), event.getFilmId()), event.isLiked());
+        }
+        recommendations.remove(event.getUserId());
+    }
+
+    // Между полными перестроениями новые оценки применяются к матрице в памяти и пересчитываются
+    // только соседи затронутых фильмов; из кэша уходят лишь пользователи, оценившие такие фильмы
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.films.refresh-interval-ms:10000}",
+            initialDelayString = "${filmorate.recommendations.films.refresh-interval-ms:10000}")
+    public synchronized void refreshModel() {
+        FilmSimilarityModel current = model;
+        if (current == null) {
+            return;
+        }
+        boolean rebuildDue = approximate && System.currentTimeMillis() - modelBuiltAt >= fullRebuildIntervalMs;
+        Map<Long, Boolean> changes = drainLikeChanges();
+        if (changes.isEmpty() && !rebuildDue) {
+            return;
+        }
+        if (rebuildDue) {
+            // Полное перестроение по таблице likes заодно исправляет возможное расхождение с БД
+            rebuildModel(LikeMatrix.build(filmStorage::forEachLike));
+            recommendations.clear();
+            return;
+        }
+        long start = System.nanoTime();
+        LikeMatrix likes = current.getLikes().update(changes);
+        Set<Integer> films = new HashSet<>();
+        Set<Integer> staleUsers = new HashSet<>();
+        changes.keySet().forEach(pair -> {
+            films.add(LikeMatrix.filmIdOf(pair));
+            staleUsers.add(LikeMatrix.userIdOf(pair));
+        });
+        staleUsers.forEach(userId -> Arrays.stream(likes.filmsOf(userId)).forEach(films::add));
+        model = current.refresh(likes, films, ForkJoinPool.commonPool());
+        approximate = true;
+        films.forEach(filmId -> Arrays.stream(likes.usersOf(filmId)).forEach(staleUsers::add));
+        staleUsers.forEach(recommendations::remove);
+        log.info("Модель рекомендаций фильмов обновлена за {} мс: пересчитано фильмов {}, сброшено рекомендаций {}",
+                (System.nanoTime() - start) / 1_000_000, films.size(), staleUsers.size());
+    }
+
+    private FilmSimilarityModel getModel() {
+        FilmSimilarityModel current = model;
+        if (current == null) {
+            synchronized (this) {
+                if (model == null) {
+                    drainLikeChanges();
+                    rebuildModel(LikeMatrix.build(filmStorage::forEachLike));
+                }
+                current = model;
+            }
+        }
+        return current;
+    }
+
+    private void rebuildModel(LikeMatrix likes) {
+        long start = System.nanoTime();
+        model = FilmSimilarityModel.build(likes, ForkJoinPool.commonPool());
+        modelBuiltAt = System.currentTimeMillis();
+        approximate = false;
+        log.info("Модель рекомендаций фильмов перестроена за {} мс: лайков {}",
+                (System.nanoTime() - start) / 1_000_000, likes.getLikeCount());
+    }
+
+    private Map<Long, Boolean> drainLikeChanges() {
+        synchronized (likeChanges) {
+            Map<Long, Boolean> drained = new LinkedHashMap<>(likeChanges);
+            likeChanges.clear();
+            return drained;
+        }
+    }
+}
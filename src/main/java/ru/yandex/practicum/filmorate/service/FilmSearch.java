@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+
+// Поиск по названиям и описаниям: индекс строится при старте и обновляется по событиям фильмов,
+// поэтому запрос не просматривает таблицу films
+@Component
+@Slf4j
+public class FilmSearch {
+    private final FilmStorage filmStorage;
+    private final FilmSearchIndex index = new FilmSearchIndex();
+
+    public FilmSearch(FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        filmStorage.forEachFilm(this::put);
+        log.info("Поисковый индекс построен: {} фильмов", index.size());
+    }
+
+    @EventListener
+    public void onFilmChanged(FilmEvent event) {
+        put(event.getFilm());
+    }
+
+    public int[] search(String query, int count) {
+        return index.search(query, count);
+    }
+
+    private void put(Film film) {
+        index.put(film.getId(), film.getName(), film.getDescription());
+    }
+}
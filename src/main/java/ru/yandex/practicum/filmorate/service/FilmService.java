@@ -1,15 +1,20 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Batch;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.PopularityCheck;
+import ru.yandex.practicum.filmorate.storage.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.TrendingCounters;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -19,56 +24,183 @@ import java.util.stream.Collectors;
 public class FilmService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LikeBuffer likeBuffer;
+    private final PopularityLeaderboard popularityLeaderboard;
+    private final TrendingFilms trendingFilms;
+    private final FilmSearch filmSearch;
     private static final int MAX_DESCRIPTION_LENGTH = 200;
     private static final LocalDate MIN_RELEASE_DATE = LocalDate.of(1895,12,28);
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_SEARCH_RESULTS = 100;
+    private static final int MAX_POPULAR_FILMS = 1000;
+    private static final int MAX_TRENDING_FILMS = 1000;
+    private static final String TRENDING_WINDOWS = Arrays.stream(TrendingCounters.Window.values())
+            .map(TrendingCounters.Window::getLabel)
+            .collect(Collectors.joining(", "));
 
     @Autowired
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
-                       @Qualifier("userDbStorage") UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage,
+                       UserStorage userStorage,
+                       ApplicationEventPublisher eventPublisher,
+                       LikeBuffer likeBuffer,
+                       PopularityLeaderboard popularityLeaderboard,
+                       TrendingFilms trendingFilms,
+                       FilmSearch filmSearch) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.eventPublisher = eventPublisher;
+        this.likeBuffer = likeBuffer;
+        this.popularityLeaderboard = popularityLeaderboard;
+        this.trendingFilms = trendingFilms;
+        this.filmSearch = filmSearch;
     }
 
     public List<Film> getAllFilms() {
         return filmStorage.getAllFilms();
     }
 
+    public void validatePageSize(int size) {
+        if (size <= 0 || size > MAX_PAGE_SIZE) {
+            log.error("Размер страницы должен быть от 1 до {}", MAX_PAGE_SIZE);
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+    }
+
+    // Страница пишется прямо в поток в виде Page: {"items": [...], "next": id последнего или null}
+    public void writeFilmsPage(int afterId, int size, JsonGenerator generator) throws IOException {
+        validatePageSize(size);
+        generator.writeStartObject();
+        generator.writeFieldName("items");
+        Integer next = filmStorage.writeFilms(afterId, size, generator);
+        if (next == null) {
+            generator.writeNullField("next");
+        } else {
+            generator.writeNumberField("next", next);
+        }
+        generator.writeEndObject();
+    }
+
+    public void writeAllFilms(JsonGenerator generator) {
+        filmStorage.writeFilms(0, Integer.MAX_VALUE, generator);
+    }
+
     public Film createFilm(Film film) {
         validateFilm(film);
-        return filmStorage.createFilm(film);
+        Film created = filmStorage.createFilm(film);
+        eventPublisher.publishEvent(new FilmEvent(created));
+        return created;
     }
 
     public Film updateFilm(Film film) {
         validateFilm(film);
-        return filmStorage.updateFilm(film);
+        Film updated = filmStorage.updateFilm(film);
+        eventPublisher.publishEvent(new FilmEvent(updated));
+        return updated;
     }
 
     public Film getFilmById(int filmId) {
         return filmStorage.getFilmById(filmId);
     }
 
+    // Все фильмы одним запросом к films и по одному к оценкам и жанрам
+    public Batch<Film> getFilmsByIds(List<Integer> filmIds) {
+        if (filmIds.isEmpty() || filmIds.size() > MAX_PAGE_SIZE) {
+            log.error("За один запрос можно получить от 1 до {} фильмов", MAX_PAGE_SIZE);
+            throw new ValidationException("За один запрос можно получить от 1 до " + MAX_PAGE_SIZE + " фильмов");
+        }
+        return Batch.of(filmIds, filmStorage.getFilmsByIds(filmIds), Film::getId);
+    }
+
     public Film addLike(int filmId, int userId) {
-        userStorage.getUserById(userId);
+        userStorage.checkUserId(userId);
         filmStorage.addLike(userId, filmId);
+        eventPublisher.publishEvent(new LikeEvent(userId, filmId, true));
 
         return filmStorage.getFilmById(filmId);
     }
 
     public Film removeLike(int filmId, int userId) {
-        userStorage.getUserById(userId);
-        if (!filmStorage.getFilmById(filmId).getLikes().contains(userId)) {
-            log.info("Пользователь с id {} не ставил лайк фильму с id {}", userId, filmId);
-            throw new SmthNotFoundException("Пользователь с id " + userId + " не ставил лайк фильму с id " + filmId);
-        }
+        userStorage.checkUserId(userId);
         filmStorage.removeLike(userId, filmId);
+        eventPublisher.publishEvent(new LikeEvent(userId, filmId, false));
 
         return filmStorage.getFilmById(filmId);
     }
 
+    public boolean isLikeWriteBehind() {
+        return likeBuffer.isEnabled();
+    }
+
+    public void bufferLike(int filmId, int userId, boolean liked) {
+        userStorage.checkUserId(userId);
+        if (liked) {
+            likeBuffer.addLike(userId, filmId);
+        } else {
+            likeBuffer.removeLike(userId, filmId);
+        }
+    }
+
     public List<Film> getPopularFilms(int count) {
-        return filmStorage.getAllFilms().stream()
-                .sorted((o1, o2) -> o2.getLikes().size() - o1.getLikes().size())
-                .limit(count)
+        validatePopularCount(count);
+        return getFilmsInOrder(popularityLeaderboard.top(count));
+    }
+
+    // Топ с фильтрами берётся из рейтингов по жанру, MPA и году; редкие сочетания считает хранилище
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year) {
+        validatePopularCount(count);
+        Optional<int[]> filmIds = popularityLeaderboard.top(count, genreId, mpaId, year);
+        if (filmIds.isEmpty()) {
+            log.debug("Редкое сочетание фильтров: жанр {}, MPA {}, год {}", genreId, mpaId, year);
+            return filmStorage.getPopularFilms(count, genreId, mpaId, year);
+        }
+        return getFilmsInOrder(filmIds.get());
+    }
+
+    public List<Film> getTrendingFilms(String window, int count) {
+        TrendingCounters.Window trendingWindow = TrendingCounters.Window.fromLabel(window).orElse(null);
+        if (trendingWindow == null) {
+            log.error("Окно тренда должно быть одним из: {}", TRENDING_WINDOWS);
+            throw new ValidationException("Окно тренда должно быть одним из: " + TRENDING_WINDOWS);
+        }
+        if (count <= 0 || count > MAX_TRENDING_FILMS) {
+            log.error("Количество фильмов в тренде должно быть от 1 до {}", MAX_TRENDING_FILMS);
+            throw new ValidationException("Количество фильмов в тренде должно быть от 1 до " + MAX_TRENDING_FILMS);
+        }
+        return getFilmsInOrder(trendingFilms.top(trendingWindow, count));
+    }
+
+    public List<Film> searchFilms(String query, int count) {
+        if (query == null || FilmSearchIndex.tokenize(query).isEmpty()) {
+            log.error("Поисковый запрос должен содержать хотя бы одно слово");
+            throw new ValidationException("Поисковый запрос должен содержать хотя бы одно слово");
+        }
+        if (count <= 0 || count > MAX_SEARCH_RESULTS) {
+            log.error("Количество результатов поиска должно быть от 1 до {}", MAX_SEARCH_RESULTS);
+            throw new ValidationException("Количество результатов поиска должно быть от 1 до " + MAX_SEARCH_RESULTS);
+        }
+        return getFilmsInOrder(filmSearch.search(query, count));
+    }
+
+    public PopularityCheck verifyPopularity() {
+        return popularityLeaderboard.verify();
+    }
+
+    private void validatePopularCount(int count) {
+        if (count <= 0 || count > MAX_POPULAR_FILMS) {
+            log.error("Количество популярных фильмов должно быть от 1 до {}", MAX_POPULAR_FILMS);
+            throw new ValidationException("Количество популярных фильмов должно быть от 1 до " + MAX_POPULAR_FILMS);
+        }
+    }
+
+    // Фильмы в порядке рейтинга; удалённые за это время пропускаются
+    private List<Film> getFilmsInOrder(int[] filmIds) {
+        Map<Integer, Film> films = new HashMap<>();
+        filmStorage.getFilmsByIds(Arrays.stream(filmIds).boxed().collect(Collectors.toList()))
+                .forEach(film -> films.put(film.getId(), film));
+        return Arrays.stream(filmIds)
+                .mapToObj(films::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
@@ -0,0 +1,157 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Service
+@Slf4j
+public class ImportService {
+    private final FilmService filmService;
+    private final UserService userService;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+
+    @Autowired
+    public ImportService(FilmService filmService,
+                         UserService userService,
+                         FilmStorage filmStorage,
+                         UserStorage userStorage,
+                         ObjectMapper objectMapper,
+                         ApplicationEventPublisher eventPublisher,
+                         @Value("${filmorate.import.batch-size:1000}") int batchSize) {
+        this.filmService = filmService;
+        this.userService = userService;
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+    }
+
+    public ImportReport importFilms(InputStream body) throws IOException {
+        return importLines(body, Film.class, film -> {
+            filmService.validateFilm(film);
+            if (film.getMpa() == null) {
+                throw new ValidationException("Рейтинг MPA должен быть указан");
+            }
+        }, films -> {
+            filmStorage.createFilms(films);
+            films.forEach(film -> eventPublisher.publishEvent(new FilmEvent(film)));
+        });
+    }
+
+    public ImportReport importUsers(InputStream body) throws IOException {
+        return importLines(body, User.class, userService::validateUser, userStorage::createUsers);
+    }
+
+    public ImportReport importLikes(InputStream body) throws IOException {
+        return importLines(body, Like.class, like -> {
+            filmStorage.checkFilmId(like.getFilmId());
+            userStorage.checkUserId(like.getUserId());
+        }, likes -> filmStorage.addLikes(likes).forEach(like ->
+                // События только для новых оценок: повторно загруженные не меняют ни рейтинг, ни тренды
+                eventPublisher.publishEvent(new LikeEvent(like.getUserId(), like.getFilmId(), true))));
+    }
+
+    public ImportReport importFriendships(InputStream body) throws IOException {
+        return importLines(body, Friendship.class, friendship -> {
+            if (friendship.getUserId() == friendship.getFriendId()) {
+                throw new ValidationException("Нельзя добавить самого себя в друзья!");
+            }
+            userStorage.checkUserId(friendship.getUserId());
+            userStorage.checkUserId(friendship.getFriendId());
+        }, userStorage::addFriends);
+    }
+
+    private <T> ImportReport importLines(InputStream body,
+                                         Class<T> type,
+                                         Consumer<T> validator,
+                                         Consumer<List<T>> writer) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(type);
+        ImportReport report = new ImportReport();
+        List<T> batch = new ArrayList<>(batchSize);
+        List<Integer> batchLines = new ArrayList<>(batchSize);
+        int lineNumber = 0;
+
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    T item = reader.readValue(line);
+                    validator.accept(item);
+                    batch.add(item);
+                    batchLines.add(lineNumber);
+                } catch (JsonProcessingException e) {
+                    report.getErrors().add(new ImportReport.LineError(lineNumber,
+                            "Некорректный JSON: " + e.getOriginalMessage()));
+                } catch (RuntimeException e) {
+                    report.getErrors().add(new ImportReport.LineError(lineNumber, e.getMessage()));
+                }
+                if (batch.size() == batchSize) {
+                    writeBatch(batch, batchLines, writer, report);
+                }
+            }
+        }
+        writeBatch(batch, batchLines, writer, report);
+        log.info("Импорт {}: записано {}, ошибок {}", type.getSimpleName(), report.getImported(),
+                report.getErrors().size());
+        return report;
+    }
+
+    private <T> void writeBatch(List<T> batch, List<Integer> batchLines, Consumer<List<T>> writer,
+                                ImportReport report) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            writer.accept(batch);
+            report.setImported(report.getImported() + batch.size());
+        } catch (RuntimeException e) {
+            log.warn("Пакет из {} строк не записан, повтор по одной строке: {}", batch.size(), e.getMessage());
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    writer.accept(List.of(batch.get(i)));
+                    report.setImported(report.getImported() + 1);
+                } catch (NestedRuntimeException lineException) {
+                    report.getErrors().add(new ImportReport.LineError(batchLines.get(i),
+                            lineException.getMostSpecificCause().getMessage()));
+                } catch (RuntimeException lineException) {
+                    report.getErrors().add(new ImportReport.LineError(batchLines.get(i), lineException.getMessage()));
+                }
+            }
+        }
+        batch.clear();
+        batchLines.clear();
+    }
+}
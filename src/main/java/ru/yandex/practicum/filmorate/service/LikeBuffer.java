@@ -0,0 +1,331 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.DuplicateDataException;
+import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Отложенная запись оценок: операция проверяется по состоянию в памяти, повторные операции
+// над одной парой (пользователь, фильм) схлопываются, а в таблицу likes уходят пачкой в одной транзакции
+@Component
+@Slf4j
+public class LikeBuffer {
+    private static final int MAX_PERSISTED_PAIRS = 100_000;
+    // Столько раз подряд не записавшаяся операция возвращается в буфер, прежде чем будет отброшена
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+    private final FilmStorage filmStorage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int flushThreshold;
+    private final int maxPending;
+    private final long flushIntervalMs;
+    private final Lock stateLock = new ReentrantLock();
+    private final Lock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Свой планировщик: общий поток @Scheduled занимают долгие перестроения моделей рекомендаций
+    private final ScheduledExecutorService flushExecutor;
+    // Состояние в БД пар (пользователь, фильм), с которыми недавно работали: после каждой записи
+    // обновляется записанной пачкой, давно не использованные пары вытесняются
+    private final Map<Long, Boolean> persistedLikes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_PERSISTED_PAIRS;
+        }
+    };
+    // Одновременные промахи по одной паре ждут одного запроса к БД
+    private final Map<Long, CompletableFuture<Void>> loads = new ConcurrentHashMap<>();
+    private Map<Long, Boolean> pending = new LinkedHashMap<>();
+    private Map<Long, Boolean> inFlight = Map.of();
+    private final Map<Long, Integer> failedAttempts = new HashMap<>();
+
+    @Autowired
+    public LikeBuffer(FilmStorage filmStorage,
+                      ApplicationEventPublisher eventPublisher,
+                      @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                      @Value("${filmorate.likes.write-behind.flush-threshold:1000}") int flushThreshold,
+                      @Value("${filmorate.likes.write-behind.max-pending:10000}") int maxPending,
+                      @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs) {
+        this.filmStorage = filmStorage;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.flushThreshold = flushThreshold;
+        this.maxPending = Math.max(maxPending, flushThreshold);
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushExecutor = enabled ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "like-flush");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void addLike(int userId, int filmId) {
+        record(userId, filmId, true);
+    }
+
+    public void removeLike(int userId, int filmId) {
+        record(userId, filmId, false);
+    }
+
+    public int getPendingCount() {
+        stateLock.lock();
+        try {
+            return pending.size();
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            flushExecutor.scheduleWithFixedDelay(this::scheduledFlush, flushIntervalMs, flushIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Исключение отменило бы все следующие запуски
+            log.error("Плановая запись оценок не удалась", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        int notWritten = getPendingCount();
+        if (notWritten > 0) {
+            log.error("При остановке не удалось записать операций с оценками: {}", notWritten);
+        } else {
+            log.info("Отложенные оценки записаны перед остановкой");
+        }
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Long, Boolean> batch;
+            stateLock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                inFlight = batch;
+                pending = new LinkedHashMap<>();
+            } finally {
+                stateLock.unlock();
+            }
+            List<Like> addedLikes = new ArrayList<>();
+            List<Like> removedLikes = new ArrayList<>();
+            batch.forEach((key, liked) -> (liked ? addedLikes : removedLikes).add(toLike(key)));
+            Map<Long, Boolean> failed = new LinkedHashMap<>();
+            try {
+                filmStorage.updateLikes(addedLikes, removedLikes);
+            } catch (RuntimeException e) {
+                log.error("Не удалось записать пачку из {} оценок, записываем по одной", batch.size(), e);
+                // События публикуются только для записанных операций
+                flushOneByOne(addedLikes, removedLikes).forEach(like -> failed.put(key(like), batch.remove(key(like))));
+            }
+            stateLock.lock();
+            try {
+                inFlight = Map.of();
+                persistedLikes.putAll(batch);
+                batch.keySet().forEach(failedAttempts::remove);
+                requeue(failed);
+            } finally {
+                stateLock.unlock();
+            }
+            log.debug("Записано операций с оценками: {}, не записано: {}", batch.size(), failed.size());
+            batch.forEach((key, liked) -> eventPublisher.publishEvent(
+                    new LikeEvent(userIdOf(key), filmIdOf(key), liked)));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Клиент уже получил подтверждение, поэтому не записанная операция возвращается в буфер. Если следующая
+    // операция над парой уже в буфере, она отменяет неудавшуюся: состояние в БД не изменилось
+    private void requeue(Map<Long, Boolean> failed) {
+        failed.forEach((key, liked) -> {
+            if (pending.remove(key) != null) {
+                failedAttempts.remove(key);
+                return;
+            }
+            int attempts = failedAttempts.merge(key, 1, Integer::sum);
+            if (attempts >= MAX_FLUSH_ATTEMPTS) {
+                failedAttempts.remove(key);
+                log.error("Оценка отброшена после {} неудачных попыток записи: пользователь {}, фильм {}, оценка {}",
+                        attempts, userIdOf(key), filmIdOf(key), liked);
+                return;
+            }
+            pending.put(key, liked);
+        });
+    }
+
+    private void record(int userId, int filmId, boolean liked) {
+        long key = key(userId, filmId);
+        boolean flushed = false;
+        while (true) {
+            Boolean written;
+            stateLock.lock();
+            try {
+                // Состояние пары, которое будет в БД после текущей записи
+                written = inFlight.containsKey(key) ? inFlight.get(key) : persistedLikes.get(key);
+                if (written != null && (pending.size() < maxPending || pending.containsKey(key))) {
+                    apply(key, written, liked);
+                    break;
+                }
+            } finally {
+                stateLock.unlock();
+            }
+            if (written == null) {
+                loadPersistedLike(userId, filmId);
+            } else if (!flushed) {
+                // Буфер переполнен: вызывающий поток сам записывает накопленное
+                flush();
+                flushed = true;
+            } else {
+                // Записать накопленное не удалось: операцию нельзя принять, не рискуя её потерять
+                log.error("Буфер оценок переполнен, запись в БД не удаётся");
+                throw new RejectedExecutionException("Буфер оценок переполнен, повторите запрос позже");
+            }
+        }
+        if (enabled && getPendingCount() >= flushThreshold && !flushExecutor.isShutdown()
+                && flushScheduled.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    private void apply(long key, boolean written, boolean liked) {
+        boolean current = pending.getOrDefault(key, written);
+        if (liked && current) {
+            log.info("Нельзя оценить один и тот же фильм дважды!");
+            throw new DuplicateDataException("Нельзя оценить один и тот же фильм дважды!");
+        }
+        if (!liked && !current) {
+            log.info("Пользователь с id {} не ставил оценку фильму с id {}", userIdOf(key), filmIdOf(key));
+            throw new SmthNotFoundException("Пользователь с id " + userIdOf(key) +
+                    " не ставил оценку фильму с id " + filmIdOf(key));
+        }
+        // Операция, возвращающая пару к записанному состоянию, ничего не пишет и не даёт события
+        if (liked == written) {
+            pending.remove(key);
+        } else {
+            pending.put(key, liked);
+        }
+    }
+
+    private void loadPersistedLike(int userId, int filmId) {
+        long key = key(userId, filmId);
+        CompletableFuture<Void> load = new CompletableFuture<>();
+        CompletableFuture<Void> running = loads.putIfAbsent(key, load);
+        if (running != null) {
+            // Ошибку чужой загрузки вызывающий получит при собственной попытке
+            running.exceptionally(e -> null).join();
+            return;
+        }
+        try {
+            filmStorage.checkFilmId(filmId);
+            boolean liked = filmStorage.hasLike(userId, filmId);
+            stateLock.lock();
+            try {
+                // Если пару успели записать, в кэше уже лежит её новое состояние
+                persistedLikes.putIfAbsent(key, liked);
+            } finally {
+                stateLock.unlock();
+            }
+            load.complete(null);
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    private List<Like> flushOneByOne(List<Like> addedLikes, List<Like> removedLikes) {
+        List<Like> failed = new ArrayList<>();
+        for (Like like : addedLikes) {
+            if (!flushOne(List.of(like), List.of())) {
+                failed.add(like);
+            }
+        }
+        for (Like like : removedLikes) {
+            if (!flushOne(List.of(), List.of(like))) {
+                failed.add(like);
+            }
+        }
+        return failed;
+    }
+
+    private boolean flushOne(List<Like> addedLikes, List<Like> removedLikes) {
+        try {
+            filmStorage.updateLikes(addedLikes, removedLikes);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Оценка не записана и вернётся в буфер: добавление {}, удаление {}", addedLikes, removedLikes, e);
+            return false;
+        }
+    }
+
+    private static long key(int userId, int filmId) {
+        return ((long) userId << 32) | (filmId & 0xFFFFFFFFL);
+    }
+
+    private static long key(Like like) {
+        return key(like.getUserId(), like.getFilmId());
+    }
+
+    private static int userIdOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int filmIdOf(long key) {
+        return (int) key;
+    }
+
+    private static Like toLike(long key) {
+        return new Like(userIdOf(key), filmIdOf(key));
+    }
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.Data;
+
+@Data
+public class LikeEvent {
+    private final int userId;
+    private final int filmId;
+    private final boolean liked;
+}
@@ -0,0 +1,226 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.PopularityCheck;
+import ru.yandex.practicum.filmorate.storage.PopularityRanking;
+import ru.yandex.practicum.filmorate.storage.StripedLocks;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+
+// Рейтинг популярности в памяти: при старте строится по таблице оценок, дальше каждая оценка
+// сдвигает фильм за O(log n), а /films/popular читает готовый топ без запросов к агрегату.
+// Кроме общего рейтинга ведутся отдельные рейтинги по каждому жанру, рейтингу MPA и году выхода
+@Component
+@Slf4j
+public class PopularityLeaderboard {
+    private static final int LOCK_STRIPES = 256;
+    // Сколько фильмов просматривается при сочетании фильтров, прежде чем отдать запрос хранилищу
+    private static final int COMBINED_SCAN_LIMIT = 10_000;
+    private final FilmStorage filmStorage;
+    private final PopularityRanking ranking = new PopularityRanking();
+    private final Map<Integer, PopularityRanking> byGenre = new ConcurrentHashMap<>();
+    private final Map<Integer, PopularityRanking> byMpa = new ConcurrentHashMap<>();
+    private final Map<Integer, PopularityRanking> byYear = new ConcurrentHashMap<>();
+    private final Map<Integer, FilmFacets> facets = new ConcurrentHashMap<>();
+    // Фильм меняется во всех рейтингах под одной блокировкой, чтобы число оценок в них совпадало
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+    public PopularityLeaderboard(FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    // Фильмы читаются без оценок, только ради жанров, рейтинга MPA и года; число оценок берётся из агрегата
+    @PostConstruct
+    public void rebuild() {
+        filmStorage.forEachFilmWithoutLikes(this::place);
+        filmStorage.forEachLikeCount(this::setCount);
+        log.info("Рейтинг популярности построен: {} фильмов, жанров {}, рейтингов MPA {}, лет {}",
+                ranking.size(), byGenre.size(), byMpa.size(), byYear.size());
+    }
+
+    // Раньше EntityVersions: к смене тега /films/popular уже отдаёт новый топ
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onFilmChanged(FilmEvent event) {
+        place(event.getFilm());
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onLike(LikeEvent event) {
+        int filmId = event.getFilmId();
+        Lock lock = locks.forId(filmId);
+        lock.lock();
+        try {
+            int count = ranking.change(filmId, event.isLiked() ? 1 : -1);
+            facetRankings(facets.get(filmId)).forEach(facetRanking -> facetRanking.set(filmId, count));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int[] top(int count) {
+        return ranking.top(count);
+    }
+
+    // Топ среди фильмов, подходящих под все заданные фильтры (null - фильтр не задан). Пусто, если
+    // сочетание фильтров настолько редкое, что дешевле выбрать топ запросом к хранилищу
+    public Optional<int[]> top(int count, Integer genreId, Integer mpaId, Integer year) {
+        List<PopularityRanking> selected = new ArrayList<>();
+        if (genreId != null) {
+            selected.add(byGenre.get(genreId));
+        }
+        if (mpaId != null) {
+            selected.add(byMpa.get(mpaId));
+        }
+        if (year != null) {
+            selected.add(byYear.get(year));
+        }
+        if (selected.isEmpty()) {
+            return Optional.of(ranking.top(count));
+        }
+        if (selected.contains(null)) {
+            return Optional.of(new int[0]);
+        }
+        PopularityRanking narrowest = selected.stream()
+                .min(Comparator.comparingInt(PopularityRanking::size))
+                .orElseThrow();
+        if (selected.size() == 1) {
+            return Optional.of(narrowest.top(count));
+        }
+        int[] filmIds = new int[Math.max(Math.min(count, narrowest.size()), 0)];
+        // Найдено и просмотрено фильмов
+        int[] progress = new int[2];
+        if (filmIds.length > 0) {
+            narrowest.forEachRanked(filmId -> {
+                FilmFacets filmFacets = facets.get(filmId);
+                if (filmFacets != null && filmFacets.matches(genreId, mpaId, year)) {
+                    filmIds[progress[0]++] = filmId;
+                }
+                return progress[0] < filmIds.length && ++progress[1] < COMBINED_SCAN_LIMIT;
+            });
+        }
+        if (progress[0] < filmIds.length && progress[1] >= COMBINED_SCAN_LIMIT) {
+            return Optional.empty();
+        }
+        return Optional.of(Arrays.copyOf(filmIds, progress[0]));
+    }
+
+    // Для пакетных записей, где по событиям нельзя понять, какие оценки были новыми
+    public void resync(Collection<Integer> filmIds) {
+        filmStorage.forEachLikeCount(filmIds, this::setCount);
+    }
+
+    // Сверяет рейтинг с агрегатом по таблице оценок и исправляет найденные расхождения
+    public PopularityCheck verify() {
+        Map<Integer, Integer> leaderboardCounts = new HashMap<>();
+        ranking.forEach(leaderboardCounts::put);
+        PopularityCheck check = new PopularityCheck();
+        filmStorage.forEachLikeCount((filmId, count) -> {
+            check.setCheckedFilms(check.getCheckedFilms() + 1);
+            Integer leaderboardCount = leaderboardCounts.get(filmId);
+            if (leaderboardCount == null || leaderboardCount != count) {
+                check.getMismatches().add(new PopularityCheck.Mismatch(filmId,
+                        leaderboardCount == null ? -1 : leaderboardCount, count));
+            }
+        });
+        if (!check.isConsistent()) {
+            // Перечитываем заново: пока шла сверка, часть оценок могла измениться
+            resync(check.getMismatches().stream()
+                    .map(PopularityCheck.Mismatch::getFilmId)
+                    .collect(Collectors.toList()));
+            log.warn("Рейтинг популярности расходился с БД для {} фильмов, исправлено", check.getMismatches().size());
+        }
+        return check;
+    }
+
+    private void setCount(int filmId, int count) {
+        Lock lock = locks.forId(filmId);
+        lock.lock();
+        try {
+            ranking.set(filmId, count);
+            facetRankings(facets.get(filmId)).forEach(facetRanking -> facetRanking.set(filmId, count));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Новые рейтинги фильма заполняются раньше, чем он убирается из старых
+    private void place(Film film) {
+        int filmId = film.getId();
+        FilmFacets newFacets = FilmFacets.of(film);
+        Lock lock = locks.forId(filmId);
+        lock.lock();
+        try {
+            ranking.add(filmId);
+            int count = ranking.getCount(filmId);
+            List<PopularityRanking> newRankings = facetRankings(newFacets);
+            newRankings.forEach(facetRanking -> facetRanking.set(filmId, count));
+            facetRankings(facets.put(filmId, newFacets)).stream()
+                    .filter(facetRanking -> !newRankings.contains(facetRanking))
+                    .forEach(facetRanking -> facetRanking.remove(filmId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<PopularityRanking> facetRankings(FilmFacets filmFacets) {
+        if (filmFacets == null) {
+            return List.of();
+        }
+        List<PopularityRanking> rankings = new ArrayList<>();
+        for (int genreId : filmFacets.genreIds) {
+            rankings.add(byGenre.computeIfAbsent(genreId, id -> new PopularityRanking()));
+        }
+        if (filmFacets.mpaId != null) {
+            rankings.add(byMpa.computeIfAbsent(filmFacets.mpaId, id -> new PopularityRanking()));
+        }
+        if (filmFacets.year != null) {
+            rankings.add(byYear.computeIfAbsent(filmFacets.year, id -> new PopularityRanking()));
+        }
+        return rankings;
+    }
+
+    private static final class FilmFacets {
+        private final int[] genreIds;
+        private final Integer mpaId;
+        private final Integer year;
+
+        private FilmFacets(int[] genreIds, Integer mpaId, Integer year) {
+            this.genreIds = genreIds;
+            this.mpaId = mpaId;
+            this.year = year;
+        }
+
+        private static FilmFacets of(Film film) {
+            return new FilmFacets(
+                    film.getGenres().stream().mapToInt(Genre::getId).distinct().toArray(),
+                    film.getMpa() == null ? null : film.getMpa().getId(),
+                    film.getReleaseDate() == null ? null : film.getReleaseDate().getYear());
+        }
+
+        private boolean matches(Integer genreId, Integer mpaId, Integer year) {
+            return (genreId == null || Arrays.stream(genreIds).anyMatch(id -> id == genreId))
+                    && (mpaId == null || mpaId.equals(this.mpaId))
+                    && (year == null || year.equals(this.year));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FriendGraphSnapshot;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class RecommendationService {
+    private static final int MAX_RECOMMENDATIONS = 100;
+    private final UserStorage userStorage;
+    private volatile FriendGraphSnapshot friendGraph;
+
+    @Autowired
+    public RecommendationService(UserStorage userStorage) {
+        this.userStorage = userStorage;
+    }
+
+    public List<User> recommendFriends(int userId, int count) {
+        if (count <= 0 || count > MAX_RECOMMENDATIONS) {
+            log.error("Количество рекомендаций должно быть от 1 до {}", MAX_RECOMMENDATIONS);
+            throw new ValidationException("Количество рекомендаций должно быть от 1 до " + MAX_RECOMMENDATIONS);
+        }
+        userStorage.checkUserId(userId);
+        int[] recommendedIds = getFriendGraph().recommend(userId, count);
+        Map<Integer, User> usersById = userStorage.getUsersByIds(Arrays.stream(recommendedIds).boxed()
+                        .collect(Collectors.toList())).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        return Arrays.stream(recommendedIds)
+                .filter(usersById::containsKey)
+                .mapToObj(usersById::get)
+                .collect(Collectors.toList());
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.refresh-interval-ms:60000}",
+            initialDelayString = "${filmorate.recommendations.refresh-interval-ms:60000}")
+    public void rebuildFriendGraph() {
+        long start = System.nanoTime();
+        FriendGraphSnapshot snapshot = FriendGraphSnapshot.build(userStorage::forEachFriendship);
+        friendGraph = snapshot;
+        log.info("Снимок графа дружбы перестроен за {} мс: пользователей {}, связей {}",
+                (System.nanoTime() - start) / 1_000_000, snapshot.getUserCount(), snapshot.getFriendshipCount());
+    }
+
+    private FriendGraphSnapshot getFriendGraph() {
+        FriendGraphSnapshot snapshot = friendGraph;
+        if (snapshot == null) {
+            synchronized (this) {
+                if (friendGraph == null) {
+                    rebuildFriendGraph();
+                }
+                snapshot = friendGraph;
+            }
+        }
+        return snapshot;
+    }
+}
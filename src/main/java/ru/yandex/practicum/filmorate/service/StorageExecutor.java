@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.SqlStats;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Отдельный ограниченный пул для тяжёлых запросов к хранилищу: они не занимают потоки Tomcat,
+// а при переполнении очереди запрос сразу получает отказ вместо ожидания
+@Component
+@Slf4j
+public class StorageExecutor {
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    private final long timeoutMs;
+
+    public StorageExecutor(@Value("${filmorate.storage-executor.pool-size:8}") int poolSize,
+                           @Value("${filmorate.storage-executor.queue-capacity:100}") int queueCapacity,
+                           @Value("${filmorate.storage-executor.timeout-ms:5000}") long timeoutMs,
+                           ObjectProvider<MeterRegistry> meterRegistry) {
+        this.timeoutMs = timeoutMs;
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("storage-");
+        executor.setTaskDecorator(StorageExecutor::withSqlStats);
+        executor.initialize();
+        meterRegistry.ifAvailable(registry -> ExecutorServiceMetrics.monitor(registry,
+                executor.getThreadPoolExecutor(), "filmorate.storage.executor", List.of()));
+    }
+
+    // Если очередь заполнена, бросает RejectedExecutionException; по истечении таймаута
+    // результат завершается TimeoutException, а сама задача отменяется и её поток прерывается
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running = executor.submit(() -> {
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((value, e) -> {
+                    if (e != null) {
+                        running.cancel(true);
+                    }
+                });
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Статистика SQL запроса продолжает считаться и в потоке пула
+    private static Runnable withSqlStats(Runnable task) {
+        SqlStats stats = SqlStats.current();
+        return () -> {
+            SqlStats.bind(stats);
+            try {
+                task.run();
+            } finally {
+                SqlStats.stop();
+            }
+        };
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.TrendingCounters;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+// Фильмы, набравшие больше всего оценок за последний час, сутки или неделю. При старте счётчики
+// заполняются оценками за неделю по created_at, дальше - только событиями, без запросов к likes
+@Component
+@Slf4j
+public class TrendingFilms {
+    private static final Duration LONGEST_WINDOW = Duration.ofDays(7);
+    private final FilmStorage filmStorage;
+    private final Clock clock;
+    private final TrendingCounters counters = new TrendingCounters();
+
+    @Autowired
+    public TrendingFilms(FilmStorage filmStorage) {
+        this(filmStorage, Clock.systemUTC());
+    }
+
+    public TrendingFilms(FilmStorage filmStorage, Clock clock) {
+        this.filmStorage = filmStorage;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void load() {
+        Instant now = clock.instant();
+        counters.advance(minuteOf(now));
+        filmStorage.forEachLikeSince(now.minus(LONGEST_WINDOW),
+                (createdAt, filmId) -> counters.record(filmId, minuteOf(createdAt), 1));
+        log.info("Счётчики трендов заполнены: {} фильмов с оценками за неделю", counters.size());
+    }
+
+    // Время оценки - момент события: при отложенной записи оно отстаёт от запроса не больше чем на сброс буфера
+    @EventListener
+    public void onLike(LikeEvent event) {
+        counters.record(event.getFilmId(), minuteOf(clock.instant()), event.isLiked() ? 1 : -1);
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.trending.tick-interval-ms:10000}")
+    public void tick() {
+        counters.advance(minuteOf(clock.instant()));
+    }
+
+    public int[] top(TrendingCounters.Window window, int count) {
+        return counters.top(window, count);
+    }
+
+    private static long minuteOf(Instant instant) {
+        return Math.floorDiv(instant.getEpochSecond(), 60);
+    }
+}
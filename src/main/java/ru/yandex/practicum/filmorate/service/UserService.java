@@ -1,26 +1,26 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Batch;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.io.IOException;
 import java.time.LocalDate;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class UserService {
+    private static final int MAX_PAGE_SIZE = 1000;
     private final UserStorage userStorage;
 
     @Autowired
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage) {
+    public UserService(UserStorage userStorage) {
         this.userStorage = userStorage;
     }
 
@@ -33,6 +33,39 @@ public class UserService {
         return userStorage.getAllUsers();
     }
 
+    public void validatePageSize(int size) {
+        if (size <= 0 || size > MAX_PAGE_SIZE) {
+            log.error("Размер страницы должен быть от 1 до {}", MAX_PAGE_SIZE);
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+    }
+
+    // Страница пишется прямо в поток в виде Page: {"items": [...], "next": id последнего или null}
+    public void writeUsersPage(int afterId, int size, JsonGenerator generator) throws IOException {
+        validatePageSize(size);
+        generator.writeStartObject();
+        generator.writeFieldName("items");
+        Integer next = userStorage.writeUsers(afterId, size, generator);
+        if (next == null) {
+            generator.writeNullField("next");
+        } else {
+            generator.writeNumberField("next", next);
+        }
+        generator.writeEndObject();
+    }
+
+    public void writeAllUsers(JsonGenerator generator) {
+        userStorage.writeUsers(0, Integer.MAX_VALUE, generator);
+    }
+
+    public Batch<User> getUsersByIds(List<Integer> userIds) {
+        if (userIds.isEmpty() || userIds.size() > MAX_PAGE_SIZE) {
+            log.error("За один запрос можно получить от 1 до {} пользователей", MAX_PAGE_SIZE);
+            throw new ValidationException("За один запрос можно получить от 1 до " + MAX_PAGE_SIZE + " пользователей");
+        }
+        return Batch.of(userIds, userStorage.getUsersByIds(userIds), User::getId);
+    }
+
     public User getUserById(int userId) {
         return userStorage.getUserById(userId);
     }
@@ -51,19 +84,11 @@ public class UserService {
     }
 
     public List<User> getUsersFriends(int userId) {
-        return userStorage.getFriends(userId).stream()
-                .map(userStorage::getUserById)
-                .collect(Collectors.toList());
+        return userStorage.getFriendUsers(userId);
     }
 
     public List<User> getMutualFriends(int userId, int otherId) {
-        Set<Integer> friends = new HashSet<>(userStorage.getFriends(userId));
-        Set<Integer> otherFriends = new HashSet<>(userStorage.getFriends(otherId));
-
-        friends.retainAll(otherFriends);
-        return friends.stream()
-                .map(userStorage::getUserById)
-                .collect(Collectors.toList());
+        return userStorage.getMutualFriends(userId, otherId);
     }
 
 
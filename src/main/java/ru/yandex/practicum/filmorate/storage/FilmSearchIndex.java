@@ -0,0 +1,182 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Обратный индекс по словам названий и описаний фильмов. Слова приводятся к нижнему регистру,
+// ё заменяется на е. Для слов запроса от трёх букв дополнительно ищутся слова, содержащие их
+// внутри ("гэтсб" - "гэтсби", "фильм" - "фильма"): кандидаты берутся по триграммам словаря
+public class FilmSearchIndex {
+    private static final int GRAM = 3;
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    // Точное совпадение слова весит больше, чем вхождение запроса внутрь слова
+    private static final int EXACT_WEIGHT = 2;
+    // Слово -> (id фильма -> вес слова в фильме)
+    private final Map<String, Map<Integer, Integer>> postings = new HashMap<>();
+    // Триграмма -> слова словаря, в которых она встречается
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+    private final Map<Integer, Set<String>> filmTerms = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void put(int filmId, String name, String description) {
+        Map<String, Integer> weights = new HashMap<>();
+        tokenize(name).forEach(term -> weights.merge(term, NAME_WEIGHT, Integer::sum));
+        tokenize(description).forEach(term -> weights.merge(term, DESCRIPTION_WEIGHT, Integer::sum));
+        lock.writeLock().lock();
+        try {
+            removeTerms(filmId);
+            weights.forEach((term, weight) -> postings.computeIfAbsent(term, this::addTrigrams).put(filmId, weight));
+            filmTerms.put(filmId, weights.keySet());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int filmId) {
+        lock.writeLock().lock();
+        try {
+            removeTerms(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return filmTerms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Фильмы, в которых есть все слова запроса, от самых релевантных; при равенстве - по id
+    public int[] search(String query, int count) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || count <= 0) {
+            return new int[0];
+        }
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> scores = null;
+            for (String term : new HashSet<>(terms)) {
+                Map<Integer, Integer> termScores = match(term);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    scores.keySet().retainAll(termScores.keySet());
+                    scores.replaceAll((filmId, score) -> score + termScores.get(filmId));
+                }
+                if (scores.isEmpty()) {
+                    return new int[0];
+                }
+            }
+            TopK top = new TopK(Math.min(count, scores.size()));
+            scores.forEach(top::offer);
+            return top.ids();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ROOT)
+                .replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private Map<Integer, Integer> match(String term) {
+        Map<Integer, Integer> scores = new HashMap<>();
+        Map<Integer, Integer> exact = postings.get(term);
+        if (exact != null) {
+            exact.forEach((filmId, weight) -> scores.merge(filmId, EXACT_WEIGHT * weight, Integer::sum));
+        }
+        for (String token : containingTokens(term)) {
+            if (!token.equals(term)) {
+                postings.get(token).forEach((filmId, weight) -> scores.merge(filmId, weight, Integer::sum));
+            }
+        }
+        return scores;
+    }
+
+    // Слова словаря, содержащие term: проверяются только слова из самой редкой триграммы запроса
+    private Set<String> containingTokens(String term) {
+        if (term.length() < GRAM) {
+            return Set.of();
+        }
+        Set<String> candidates = null;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            Set<String> tokens = trigrams.get(term.substring(i, i + GRAM));
+            if (tokens == null) {
+                return Set.of();
+            }
+            if (candidates == null || tokens.size() < candidates.size()) {
+                candidates = tokens;
+            }
+        }
+        Set<String> result = new HashSet<>();
+        for (String token : candidates) {
+            if (token.contains(term)) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    private Map<Integer, Integer> addTrigrams(String term) {
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            trigrams.computeIfAbsent(term.substring(i, i + GRAM), gram -> new HashSet<>()).add(term);
+        }
+        return new HashMap<>();
+    }
+
+    private void removeTerms(int filmId) {
+        Set<String> terms = filmTerms.remove(filmId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<Integer, Integer> films = postings.get(term);
+            films.remove(filmId);
+            if (films.isEmpty()) {
+                postings.remove(term);
+                removeTrigrams(term);
+            }
+        }
+    }
+
+    private void removeTrigrams(String term) {
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            String gram = term.substring(i, i + GRAM);
+            Set<String> tokens = trigrams.get(gram);
+            tokens.remove(term);
+            if (tokens.isEmpty()) {
+                trigrams.remove(gram);
+            }
+        }
+    }
+}
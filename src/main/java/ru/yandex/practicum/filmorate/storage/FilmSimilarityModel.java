@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+// Модель item-to-item: для каждого фильма хранится до MAX_NEIGHBOURS самых похожих фильмов.
+// Похожесть - косинусная мера по совместным лайкам: co(a, b) / sqrt(likes(a) * likes(b))
+public class FilmSimilarityModel {
+    private static final int MAX_NEIGHBOURS = 50;
+    private static final int LEAF_SIZE = 64;
+    private static final int[] NO_IDS = new int[0];
+    private static final float[] NO_SCORES = new float[0];
+    private final LikeMatrix likes;
+    private final int[][] neighbourIds;
+    private final float[][] neighbourScores;
+
+    private FilmSimilarityModel(LikeMatrix likes, int[][] neighbourIds, float[][] neighbourScores) {
+        this.likes = likes;
+        this.neighbourIds = neighbourIds;
+        this.neighbourScores = neighbourScores;
+    }
+
+    public static FilmSimilarityModel build(LikeMatrix likes, ForkJoinPool pool) {
+        int[][] ids = new int[likes.size()][];
+        float[][] scores = new float[likes.size()][];
+        Arrays.fill(ids, NO_IDS);
+        Arrays.fill(scores, NO_SCORES);
+        int[] filmIds = IntStream.range(0, likes.size()).filter(filmId -> likes.likesOf(filmId) > 0).toArray();
+        pool.invoke(new SimilarityTask(likes, filmIds, 0, filmIds.length, ids, scores));
+        return new FilmSimilarityModel(likes, ids, scores);
+    }
+
+    // Пересчитывает соседей только для изменившихся фильмов; соседи остальных берутся из текущей модели
+    public FilmSimilarityModel refresh(LikeMatrix updatedLikes, Collection<Integer> changedFilmIds, ForkJoinPool pool) {
+        int size = updatedLikes.size();
+        int[][] ids = Arrays.copyOf(neighbourIds, size);
+        float[][] scores = Arrays.copyOf(neighbourScores, size);
+        for (int filmId = Math.min(neighbourIds.length, size); filmId < size; filmId++) {
+            ids[filmId] = NO_IDS;
+            scores[filmId] = NO_SCORES;
+        }
+        int[] filmIds = changedFilmIds.stream()
+                .mapToInt(Integer::intValue)
+                .filter(filmId -> filmId >= 0 && filmId < size)
+                .distinct()
+                .toArray();
+        pool.invoke(new SimilarityTask(updatedLikes, filmIds, 0, filmIds.length, ids, scores));
+        return new FilmSimilarityModel(updatedLikes, ids, scores);
+    }
+
+    public LikeMatrix getLikes() {
+        return likes;
+    }
+
+    // likedFilmIds должен быть отсортирован по возрастанию
+    public int[] recommend(int[] likedFilmIds, int limit) {
+        float[] scores = new float[neighbourIds.length];
+        int[] touched = new int[Math.min(neighbourIds.length, likedFilmIds.length * MAX_NEIGHBOURS)];
+        int touchedCount = 0;
+        for (int filmId : likedFilmIds) {
+            if (filmId < 0 || filmId >= neighbourIds.length) {
+                continue;
+            }
+            int[] ids = neighbourIds[filmId];
+            float[] similarities = neighbourScores[filmId];
+            for (int i = 0; i < ids.length; i++) {
+                int candidateId = ids[i];
+                if (Arrays.binarySearch(likedFilmIds, candidateId) >= 0) {
+                    continue;
+                }
+                if (scores[candidateId] == 0) {
+                    touched[touchedCount++] = candidateId;
+                }
+                scores[candidateId] += similarities[i];
+            }
+        }
+        TopK top = new TopK(limit);
+        for (int i = 0; i < touchedCount; i++) {
+            top.offer(touched[i], scores[touched[i]]);
+        }
+        return top.ids();
+    }
+
+    private static class SimilarityTask extends RecursiveAction {
+        private final LikeMatrix likes;
+        private final int[] filmIds;
+        private final int from;
+        private final int to;
+        private final int[][] neighbourIds;
+        private final float[][] neighbourScores;
+
+        private SimilarityTask(LikeMatrix likes, int[] filmIds, int from, int to,
+                               int[][] neighbourIds, float[][] neighbourScores) {
+            this.likes = likes;
+            this.filmIds = filmIds;
+            this.from = from;
+            this.to = to;
+            this.neighbourIds = neighbourIds;
+            this.neighbourScores = neighbourScores;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SimilarityTask(likes, filmIds, from, middle, neighbourIds, neighbourScores),
+                        new SimilarityTask(likes, filmIds, middle, to, neighbourIds, neighbourScores));
+                return;
+            }
+            int[] coLikes = new int[likes.size()];
+            int[] touched = new int[likes.size()];
+            for (int i = from; i < to; i++) {
+                computeNeighbours(filmIds[i], coLikes, touched);
+            }
+        }
+
+        private void computeNeighbours(int filmId, int[] coLikes, int[] touched) {
+            int touchedCount = 0;
+            for (int i = likes.filmOffset(filmId); i < likes.filmOffset(filmId + 1); i++) {
+                int userId = likes.filmUser(i);
+                for (int j = likes.userOffset(userId); j < likes.userOffset(userId + 1); j++) {
+                    int otherId = likes.userFilm(j);
+                    if (otherId != filmId && coLikes[otherId]++ == 0) {
+                        touched[touchedCount++] = otherId;
+                    }
+                }
+            }
+            TopK top = new TopK(MAX_NEIGHBOURS);
+            double filmLikes = likes.likesOf(filmId);
+            for (int i = 0; i < touchedCount; i++) {
+                int otherId = touched[i];
+                top.offer(otherId, (float) (coLikes[otherId] / Math.sqrt(filmLikes * likes.likesOf(otherId))));
+                coLikes[otherId] = 0;
+            }
+            neighbourIds[filmId] = top.ids();
+            neighbourScores[filmId] = top.floatWeights();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+// Неизменяемый снимок графа дружбы в формате CSR: друзья пользователя u лежат в
+// friends[friendOffsets[u]..friendOffsets[u + 1]), а те, кто добавил u в друзья, - в followers
+public class FriendGraphSnapshot {
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+    private final int userCount;
+    private final int[] friendOffsets;
+    private final int[] friends;
+    private final int[] followerOffsets;
+    private final int[] followers;
+
+    private FriendGraphSnapshot(IdPairBuffer pairs) {
+        userCount = pairs.maxId() + 1;
+        friendOffsets = new int[userCount + 1];
+        friends = new int[pairs.size()];
+        followerOffsets = new int[userCount + 1];
+        followers = new int[pairs.size()];
+        pairs.fillCsr(friendOffsets, friends, false);
+        pairs.fillCsr(followerOffsets, followers, true);
+    }
+
+    public static FriendGraphSnapshot build(Consumer<IdPairConsumer> source) {
+        IdPairBuffer pairs = new IdPairBuffer();
+        source.accept(pairs);
+        return new FriendGraphSnapshot(pairs);
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    public int getFriendshipCount() {
+        return friends.length;
+    }
+
+    // Кандидат получает по очку за каждого общего друга: друг пользователя, которого кандидат тоже добавил в друзья
+    public int[] recommend(int userId, int limit) {
+        if (userId < 0 || userId >= userCount || limit <= 0) {
+            return new int[0];
+        }
+        int from = friendOffsets[userId];
+        int to = friendOffsets[userId + 1];
+        long work = 0;
+        for (int i = from; i < to; i++) {
+            work += followerOffsets[friends[i] + 1] - followerOffsets[friends[i]];
+        }
+        IntStream friendPositions = IntStream.range(from, to);
+        if (work >= PARALLEL_THRESHOLD) {
+            friendPositions = friendPositions.parallel();
+        }
+        Scores scores = friendPositions.collect(
+                Scores::new,
+                (acc, position) -> acc.addFollowersOf(friends[position]),
+                Scores::merge);
+
+        scores.exclude(userId);
+        for (int i = from; i < to; i++) {
+            scores.exclude(friends[i]);
+        }
+        return scores.top(limit);
+    }
+
+    private class Scores {
+        private final int[] scores = new int[userCount];
+        private int[] touched = new int[16];
+        private int touchedCount;
+
+        private void addFollowersOf(int friendId) {
+            for (int i = followerOffsets[friendId]; i < followerOffsets[friendId + 1]; i++) {
+                increment(followers[i], 1);
+            }
+        }
+
+        private void merge(Scores other) {
+            for (int i = 0; i < other.touchedCount; i++) {
+                int candidateId = other.touched[i];
+                increment(candidateId, other.scores[candidateId]);
+            }
+        }
+
+        private void increment(int candidateId, int delta) {
+            if (scores[candidateId] == 0) {
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                }
+                touched[touchedCount++] = candidateId;
+            }
+            scores[candidateId] += delta;
+        }
+
+        private void exclude(int candidateId) {
+            scores[candidateId] = 0;
+        }
+
+        private int[] top(int limit) {
+            TopK top = new TopK(limit);
+            for (int i = 0; i < touchedCount; i++) {
+                int candidateId = touched[i];
+                if (scores[candidateId] > 0) {
+                    top.offer(candidateId, scores[candidateId]);
+                }
+            }
+            return top.ids();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Списки друзей хранятся отсортированными массивами, которые при изменении копируются целиком,
+// поэтому выданный наружу массив никогда не меняется
+public class FriendshipIndex {
+    private static final int[] EMPTY = new int[0];
+    private final Consumer<IdPairConsumer> loader;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[][] friends;
+
+    public FriendshipIndex(Consumer<IdPairConsumer> loader) {
+        this.loader = loader;
+    }
+
+    public int[] getFriends(int userId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return row(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int[] getMutualFriends(int userId, int otherId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return intersect(row(userId), row(otherId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void add(int userId, int friendId) {
+        lock.writeLock().lock();
+        try {
+            if (friends == null) {
+                return;
+            }
+            int[] current = row(userId);
+            int position = Arrays.binarySearch(current, friendId);
+            if (position >= 0) {
+                return;
+            }
+            int insertAt = -position - 1;
+            int[] updated = new int[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertAt);
+            updated[insertAt] = friendId;
+            System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+            setRow(userId, updated);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int userId, int friendId) {
+        lock.writeLock().lock();
+        try {
+            if (friends == null) {
+                return;
+            }
+            int[] current = row(userId);
+            int position = Arrays.binarySearch(current, friendId);
+            if (position < 0) {
+                return;
+            }
+            int[] updated = new int[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, position);
+            System.arraycopy(current, position + 1, updated, position, current.length - position - 1);
+            setRow(userId, updated);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private void ensureLoaded() {
+        lock.readLock().lock();
+        try {
+            if (friends != null) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (friends == null) {
+                friends = load();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int[][] load() {
+        IdPairBuffer pairs = new IdPairBuffer();
+        loader.accept(pairs);
+
+        int[] sizes = new int[pairs.maxId() + 1];
+        for (int i = 0; i < pairs.size(); i++) {
+            sizes[pairs.firstId(i)]++;
+        }
+        int[][] loaded = new int[sizes.length][];
+        for (int userId = 0; userId < sizes.length; userId++) {
+            loaded[userId] = sizes[userId] == 0 ? EMPTY : new int[sizes[userId]];
+            sizes[userId] = 0;
+        }
+        for (int i = 0; i < pairs.size(); i++) {
+            int userId = pairs.firstId(i);
+            loaded[userId][sizes[userId]++] = pairs.secondId(i);
+        }
+        for (int[] row : loaded) {
+            Arrays.sort(row);
+        }
+        return loaded;
+    }
+
+    private int[] row(int userId) {
+        if (userId < 0 || userId >= friends.length) {
+            return EMPTY;
+        }
+        return friends[userId];
+    }
+
+    private void setRow(int userId, int[] updated) {
+        if (userId >= friends.length) {
+            int oldLength = friends.length;
+            friends = Arrays.copyOf(friends, Math.max(userId + 1, oldLength * 2));
+            Arrays.fill(friends, oldLength, friends.length, EMPTY);
+        }
+        friends[userId] = updated;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+
+class IdPairBuffer implements IdPairConsumer {
+    private int[] firstIds = new int[1024];
+    private int[] secondIds = new int[1024];
+    private int size;
+    private int maxId = -1;
+
+    @Override
+    public void accept(int firstId, int secondId) {
+        if (firstId < 0 || secondId < 0) {
+            return;
+        }
+        if (size == firstIds.length) {
+            firstIds = Arrays.copyOf(firstIds, size * 2);
+            secondIds = Arrays.copyOf(secondIds, size * 2);
+        }
+        firstIds[size] = firstId;
+        secondIds[size] = secondId;
+        size++;
+        maxId = Math.max(maxId, Math.max(firstId, secondId));
+    }
+
+    int size() {
+        return size;
+    }
+
+    int maxId() {
+        return maxId;
+    }
+
+    int firstId(int index) {
+        return firstIds[index];
+    }
+
+    int secondId(int index) {
+        return secondIds[index];
+    }
+
+    // Раскладывает пары в CSR: для каждого id из первой (или, при reverse, второй) колонки
+    // отсортированные парные id лежат в targets[offsets[id]..offsets[id + 1])
+    void fillCsr(int[] offsets, int[] targets, boolean reverse) {
+        for (int i = 0; i < size; i++) {
+            offsets[(reverse ? secondIds[i] : firstIds[i]) + 1]++;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        int[] cursors = Arrays.copyOf(offsets, offsets.length - 1);
+        for (int i = 0; i < size; i++) {
+            int source = reverse ? secondIds[i] : firstIds[i];
+            targets[cursors[source]++] = reverse ? firstIds[i] : secondIds[i];
+        }
+        for (int i = 0; i + 1 < offsets.length; i++) {
+            Arrays.sort(targets, offsets[i], offsets[i + 1]);
+        }
+    }
+}
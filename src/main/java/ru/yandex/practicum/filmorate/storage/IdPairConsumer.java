@@ -0,0 +1,6 @@
+package ru.yandex.practicum.filmorate.storage;
+
+@FunctionalInterface
+public interface IdPairConsumer {
+    void accept(int firstId, int secondId);
+}
@@ -0,0 +1,186 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+// Неизменяемая разреженная матрица пользователь x фильм в формате CSR, построенная по таблице likes:
+// хранится и по строкам (фильмы пользователя), и по столбцам (пользователи фильма)
+public class LikeMatrix {
+    private final int size;
+    private final int[] userOffsets;
+    private final int[] userFilms;
+    private final int[] filmOffsets;
+    private final int[] filmUsers;
+
+    private LikeMatrix(IdPairBuffer likes) {
+        size = likes.maxId() + 1;
+        userOffsets = new int[size + 1];
+        userFilms = new int[likes.size()];
+        filmOffsets = new int[size + 1];
+        filmUsers = new int[likes.size()];
+        likes.fillCsr(userOffsets, userFilms, false);
+        likes.fillCsr(filmOffsets, filmUsers, true);
+    }
+
+    private LikeMatrix(int size, int[][] users, int[][] films) {
+        this.size = size;
+        userOffsets = users[0];
+        userFilms = users[1];
+        filmOffsets = films[0];
+        filmUsers = films[1];
+    }
+
+    // Пары приходят как (user_id, film_id)
+    public static LikeMatrix build(Consumer<IdPairConsumer> source) {
+        IdPairBuffer likes = new IdPairBuffer();
+        source.accept(likes);
+        return new LikeMatrix(likes);
+    }
+
+    // Ключ изменения: (user_id << 32) | film_id
+    public static long pair(int userId, int filmId) {
+        return ((long) userId << 32) | (filmId & 0xFFFFFFFFL);
+    }
+
+    public static int userIdOf(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    public static int filmIdOf(long pair) {
+        return (int) pair;
+    }
+
+    // Новая матрица с применёнными изменениями (пара -> есть ли лайк). Заново собираются только
+    // строки затронутых пользователей и столбцы затронутых фильмов, остальные копируются блоками
+    public LikeMatrix update(Map<Long, Boolean> changes) {
+        Map<Integer, Map<Integer, Boolean>> userChanges = new TreeMap<>();
+        Map<Integer, Map<Integer, Boolean>> filmChanges = new TreeMap<>();
+        int maxId = size - 1;
+        for (Map.Entry<Long, Boolean> change : changes.entrySet()) {
+            int userId = userIdOf(change.getKey());
+            int filmId = filmIdOf(change.getKey());
+            if (userId < 0 || filmId < 0) {
+                continue;
+            }
+            userChanges.computeIfAbsent(userId, id -> new TreeMap<>()).put(filmId, change.getValue());
+            filmChanges.computeIfAbsent(filmId, id -> new TreeMap<>()).put(userId, change.getValue());
+            if (change.getValue()) {
+                maxId = Math.max(maxId, Math.max(userId, filmId));
+            }
+        }
+        if (userChanges.isEmpty()) {
+            return this;
+        }
+        int newSize = maxId + 1;
+        return new LikeMatrix(newSize,
+                splice(userOffsets, userFilms, newSize, userChanges),
+                splice(filmOffsets, filmUsers, newSize, filmChanges));
+    }
+
+    public int getLikeCount() {
+        return userFilms.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int likesOf(int filmId) {
+        return filmId < 0 || filmId >= size ? 0 : filmOffsets[filmId + 1] - filmOffsets[filmId];
+    }
+
+    int filmOffset(int filmId) {
+        return filmOffsets[filmId];
+    }
+
+    int filmUser(int position) {
+        return filmUsers[position];
+    }
+
+    int userOffset(int userId) {
+        return userOffsets[userId];
+    }
+
+    int userFilm(int position) {
+        return userFilms[position];
+    }
+
+    public int[] filmsOf(int userId) {
+        return row(userOffsets, userFilms, userId);
+    }
+
+    public int[] usersOf(int filmId) {
+        return row(filmOffsets, filmUsers, filmId);
+    }
+
+    private int[] row(int[] offsets, int[] targets, int id) {
+        if (id < 0 || id >= size) {
+            return new int[0];
+        }
+        int[] row = new int[offsets[id + 1] - offsets[id]];
+        System.arraycopy(targets, offsets[id], row, 0, row.length);
+        return row;
+    }
+
+    // Возвращает {offsets, targets} новой CSR-раскладки; changedRows отсортированы по id строки
+    private static int[][] splice(int[] offsets, int[] targets, int newSize,
+                                  Map<Integer, Map<Integer, Boolean>> changedRows) {
+        int oldSize = offsets.length - 1;
+        Map<Integer, int[]> rows = new TreeMap<>();
+        changedRows.forEach((id, changes) -> rows.put(id, mergeRow(offsets, targets, id, changes)));
+        int[] newOffsets = new int[newSize + 1];
+        int shift = 0;
+        int row = 0;
+        for (Map.Entry<Integer, int[]> changed : rows.entrySet()) {
+            int id = changed.getKey();
+            for (; row < id; row++) {
+                newOffsets[row + 1] = offsets[Math.min(row + 1, oldSize)] + shift;
+            }
+            shift += changed.getValue().length
+                    - (offsets[Math.min(id + 1, oldSize)] - offsets[Math.min(id, oldSize)]);
+            newOffsets[id + 1] = offsets[Math.min(id + 1, oldSize)] + shift;
+            row = id + 1;
+        }
+        for (; row < newSize; row++) {
+            newOffsets[row + 1] = offsets[Math.min(row + 1, oldSize)] + shift;
+        }
+        int[] newTargets = new int[newOffsets[newSize]];
+        row = 0;
+        for (Map.Entry<Integer, int[]> changed : rows.entrySet()) {
+            int id = changed.getKey();
+            copyRows(offsets, targets, newOffsets, newTargets, row, id);
+            System.arraycopy(changed.getValue(), 0, newTargets, newOffsets[id], changed.getValue().length);
+            row = id + 1;
+        }
+        copyRows(offsets, targets, newOffsets, newTargets, row, newSize);
+        return new int[][]{newOffsets, newTargets};
+    }
+
+    // Неизменённые строки [from, to) лежат подряд и в старой, и в новой раскладке
+    private static void copyRows(int[] offsets, int[] targets, int[] newOffsets, int[] newTargets, int from, int to) {
+        int oldSize = offsets.length - 1;
+        int end = Math.min(to, oldSize);
+        if (from < end) {
+            System.arraycopy(targets, offsets[from], newTargets, newOffsets[from], offsets[end] - offsets[from]);
+        }
+    }
+
+    private static int[] mergeRow(int[] offsets, int[] targets, int id, Map<Integer, Boolean> changes) {
+        TreeSet<Integer> row = new TreeSet<>();
+        if (id + 1 < offsets.length) {
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                row.add(targets[i]);
+            }
+        }
+        changes.forEach((targetId, present) -> {
+            if (present) {
+                row.add(targetId);
+            } else {
+                row.remove(targetId);
+            }
+        });
+        return row.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
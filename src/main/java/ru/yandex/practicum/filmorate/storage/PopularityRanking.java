@@ -0,0 +1,137 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.Lock;
+import java.util.function.IntPredicate;
+
+// Рейтинг фильмов по числу оценок, а при равенстве - по id. Позиция фильма меняется за O(log n)
+// под блокировкой его полосы, а топ читается проходом по skip-list без блокировок
+public class PopularityRanking {
+    private static final int LOCK_STRIPES = 256;
+    private final Map<Integer, Integer> counts = new ConcurrentHashMap<>();
+    // Ключ (Integer.MAX_VALUE - число оценок, id фильма): по возрастанию идут самые популярные
+    private final ConcurrentSkipListSet<Long> ranking = new ConcurrentSkipListSet<>();
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+    public void add(int filmId) {
+        Lock lock = locks.forId(filmId);
+        lock.lock();
+        try {
+            if (counts.putIfAbsent(filmId, 0) == null) {
+                ranking.add(key(0, filmId));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Возвращает новое число оценок фильма
+    public int change(int filmId, int delta) {
+        Lock lock = locks.forId(filmId);
+        lock.lock();
+        try {
+            int count = Math.max(counts.getOrDefault(filmId, 0) + delta, 0);
+            move(filmId, count);
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void set(int filmId, int count) {
+        Lock lock = locks.forId(filmId);
+        lock.lock();
+        try {
+            move(filmId, count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(int filmId) {
+        Lock lock = locks.forId(filmId);
+        lock.lock();
+        try {
+            Integer oldCount = counts.remove(filmId);
+            if (oldCount != null) {
+                ranking.remove(key(oldCount, filmId));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCount(int filmId) {
+        return counts.getOrDefault(filmId, 0);
+    }
+
+    public int size() {
+        return counts.size();
+    }
+
+    public void forEach(IdPairConsumer action) {
+        counts.forEach(action::accept);
+    }
+
+    // Пока оценка меняется, фильм может ненадолго оказаться в рейтинге дважды - повтор пропускается
+    public int[] top(int count) {
+        int limit = Math.max(Math.min(count, counts.size()), 0);
+        int[] filmIds = new int[limit];
+        Set<Integer> seen = new HashSet<>();
+        int size = 0;
+        for (long key : ranking) {
+            if (size == limit) {
+                break;
+            }
+            int filmId = (int) key;
+            if (seen.add(filmId)) {
+                filmIds[size++] = filmId;
+            }
+        }
+        return size == limit ? filmIds : Arrays.copyOf(filmIds, size);
+    }
+
+    public int[] top(int count, IntPredicate filter) {
+        int limit = Math.max(Math.min(count, counts.size()), 0);
+        int[] filmIds = new int[limit];
+        int[] size = new int[1];
+        if (limit > 0) {
+            forEachRanked(filmId -> {
+                if (filter.test(filmId)) {
+                    filmIds[size[0]++] = filmId;
+                }
+                return size[0] < limit;
+            });
+        }
+        return size[0] == limit ? filmIds : Arrays.copyOf(filmIds, size[0]);
+    }
+
+    // Обходит фильмы от самого популярного, пока action возвращает true
+    public void forEachRanked(IntPredicate action) {
+        Set<Integer> seen = new HashSet<>();
+        for (long key : ranking) {
+            int filmId = (int) key;
+            if (seen.add(filmId) && !action.test(filmId)) {
+                return;
+            }
+        }
+    }
+
+    // Новая позиция добавляется раньше, чем убирается старая, чтобы читатели не теряли фильм из виду
+    private void move(int filmId, int count) {
+        Integer oldCount = counts.put(filmId, count);
+        ranking.add(key(count, filmId));
+        if (oldCount != null && oldCount != count) {
+            ranking.remove(key(oldCount, filmId));
+        }
+    }
+
+    private static long key(int count, int filmId) {
+        return ((long) (Integer.MAX_VALUE - count) << 32) | filmId;
+    }
+}
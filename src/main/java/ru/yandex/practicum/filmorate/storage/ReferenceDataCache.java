@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+public class ReferenceDataCache<T> {
+    private final Supplier<List<T>> loader;
+    private final ToIntFunction<T> idExtractor;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile Snapshot<T> snapshot;
+
+    public ReferenceDataCache(Supplier<List<T>> loader, ToIntFunction<T> idExtractor) {
+        this.loader = loader;
+        this.idExtractor = idExtractor;
+    }
+
+    public List<T> getAll() {
+        Snapshot<T> current = snapshot;
+        if (current == null) {
+            misses.incrementAndGet();
+            return load().all;
+        }
+        hits.incrementAndGet();
+        return current.all;
+    }
+
+    public T get(int id) {
+        Snapshot<T> current = snapshot;
+        boolean loaded = current == null;
+        if (loaded) {
+            current = load();
+        }
+        T value = current.find(id);
+        if (loaded || value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    public void reload() {
+        load();
+    }
+
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private synchronized Snapshot<T> load() {
+        List<T> all = loader.get().stream()
+                .sorted(Comparator.comparingInt(idExtractor))
+                .collect(Collectors.toList());
+        int maxId = all.isEmpty() ? 0 : idExtractor.applyAsInt(all.get(all.size() - 1));
+        Object[] byId = new Object[maxId + 1];
+        all.forEach(value -> byId[idExtractor.applyAsInt(value)] = value);
+        Snapshot<T> loaded = new Snapshot<>(Collections.unmodifiableList(all), byId);
+        snapshot = loaded;
+        return loaded;
+    }
+
+    private static class Snapshot<T> {
+        private final List<T> all;
+        private final Object[] byId;
+
+        private Snapshot(List<T> all, Object[] byId) {
+            this.all = all;
+            this.byId = byId;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T find(int id) {
+            return id >= 0 && id < byId.length ? (T) byId[id] : null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Курсор по выборке (id, значение), отсортированной по id: позволяет слить её с основной выборкой
+// по тому же id без промежуточных коллекций
+public class SortedRowCursor {
+    private final ResultSet rs;
+    private boolean hasRow;
+
+    public SortedRowCursor(ResultSet rs) throws SQLException {
+        this.rs = rs;
+        this.hasRow = rs.next();
+    }
+
+    // Пропускает строки с меньшим id и сообщает, относится ли текущая строка к id
+    public boolean at(int id) throws SQLException {
+        while (hasRow && rs.getInt(1) < id) {
+            hasRow = rs.next();
+        }
+        return hasRow && rs.getInt(1) == id;
+    }
+
+    public int value() throws SQLException {
+        return rs.getInt(2);
+    }
+
+    public void next() throws SQLException {
+        hasRow = rs.next();
+    }
+}
@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+
+// Минимальная куча на limit элементов. Ключ упаковывает неотрицательный вес и id так,
+// что больший ключ означает больший вес, а при равенстве - меньший id
+class TopK {
+    private final long[] heap;
+    private int size;
+
+    TopK(int limit) {
+        heap = new long[Math.max(limit, 0)];
+    }
+
+    void offer(int id, int weight) {
+        long key = ((long) weight << 32) | (Integer.MAX_VALUE - id);
+        if (size < heap.length) {
+            heap[size] = key;
+            siftUp(size++);
+        } else if (size > 0 && key > heap[0]) {
+            heap[0] = key;
+            siftDown();
+        }
+    }
+
+    void offer(int id, float weight) {
+        offer(id, Float.floatToIntBits(weight));
+    }
+
+    int[] ids() {
+        long[] best = Arrays.copyOf(heap, size);
+        Arrays.sort(best);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = Integer.MAX_VALUE - (int) best[size - 1 - i];
+        }
+        return result;
+    }
+
+    float[] floatWeights() {
+        long[] best = Arrays.copyOf(heap, size);
+        Arrays.sort(best);
+        float[] result = new float[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = Float.intBitsToFloat((int) (best[size - 1 - i] >>> 32));
+        }
+        return result;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent] <= heap[index]) {
+                return;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown() {
+        int index = 0;
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && heap[left] < heap[smallest]) {
+                smallest = left;
+            }
+            if (right < size && heap[right] < heap[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(smallest, index);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+}
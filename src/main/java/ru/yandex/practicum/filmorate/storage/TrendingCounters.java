@@ -0,0 +1,180 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+// Число оценок фильмов за скользящие окна 1h, 24h и 7d. У фильма с оценками за последнюю неделю есть
+// кольцевые буферы поминутных и почасовых приростов; устаревшая корзина вычитается из суммы окна,
+// а суммы окон поддерживаются в отдельных рейтингах, поэтому топ за любое окно читается за O(K)
+public class TrendingCounters {
+    private static final int LOCK_STRIPES = 256;
+    private static final int MINUTES_PER_HOUR = 60;
+    private static final int HOURS_PER_DAY = 24;
+    private static final int HOURS_PER_WEEK = 7 * HOURS_PER_DAY;
+    private static final long MINUTES_PER_WEEK = (long) HOURS_PER_WEEK * MINUTES_PER_HOUR;
+    private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+    private final PopularityRanking[] rankings = new PopularityRanking[Window.values().length];
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+    // Текущая минута от начала эпохи
+    private final AtomicLong now = new AtomicLong();
+
+    public TrendingCounters() {
+        for (int i = 0; i < rankings.length; i++) {
+            rankings[i] = new PopularityRanking();
+        }
+    }
+
+    public enum Window {
+        HOUR("1h"),
+        DAY("24h"),
+        WEEK("7d");
+
+        private final String label;
+
+        Window(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public static Optional<Window> fromLabel(String label) {
+            return Arrays.stream(values())
+                    .filter(window -> window.label.equals(label))
+                    .findFirst();
+        }
+    }
+
+    // Оценка (delta = 1) или её снятие (delta = -1) в минуту minute. Снятие вычитается из той минуты,
+    // когда оно произошло: в окне считается прирост оценок, а не число оценок, поставленных в окне
+    public void record(int filmId, long minute, int delta) {
+        long current = now.accumulateAndGet(minute, Math::max);
+        Lock lock = locks.forId(filmId);
+        lock.lock();
+        try {
+            Counter counter = counters.computeIfAbsent(filmId, id -> new Counter(current));
+            counter.advanceTo(current);
+            if (counter.add(minute, delta)) {
+                publish(filmId, counter);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Сдвигает все окна к минуте minute; фильмы без оценок за неделю забываются
+    public void advance(long minute) {
+        long current = now.accumulateAndGet(minute, Math::max);
+        counters.forEach((filmId, counter) -> {
+            Lock lock = locks.forId(filmId);
+            lock.lock();
+            try {
+                if (counter.advanceTo(current)) {
+                    publish(filmId, counter);
+                }
+                if (counter.isEmpty()) {
+                    counters.remove(filmId, counter);
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    public int[] top(Window window, int count) {
+        return rankings[window.ordinal()].top(count);
+    }
+
+    public int getCount(Window window, int filmId) {
+        return rankings[window.ordinal()].getCount(filmId);
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    // В рейтинге окна остаются только фильмы с положительным приростом
+    private void publish(int filmId, Counter counter) {
+        for (Window window : Window.values()) {
+            int sum = counter.sums[window.ordinal()];
+            if (sum > 0) {
+                rankings[window.ordinal()].set(filmId, sum);
+            } else {
+                rankings[window.ordinal()].remove(filmId);
+            }
+        }
+    }
+
+    private static int slot(long value, int length) {
+        return (int) Math.floorMod(value, (long) length);
+    }
+
+    private static final class Counter {
+        private final int[] minutes = new int[MINUTES_PER_HOUR];
+        private final int[] hours = new int[HOURS_PER_WEEK];
+        private final int[] sums = new int[Window.values().length];
+        private long minute;
+
+        private Counter(long minute) {
+            this.minute = minute;
+        }
+
+        // Оценки старше недели не учитываются; возвращает, изменились ли суммы окон
+        private boolean add(long eventMinute, int delta) {
+            long age = minute - eventMinute;
+            long hourAge = minute / MINUTES_PER_HOUR - eventMinute / MINUTES_PER_HOUR;
+            if (hourAge >= HOURS_PER_WEEK) {
+                return false;
+            }
+            if (age < MINUTES_PER_HOUR) {
+                minutes[slot(eventMinute, MINUTES_PER_HOUR)] += delta;
+                sums[Window.HOUR.ordinal()] += delta;
+            }
+            if (hourAge < HOURS_PER_DAY) {
+                sums[Window.DAY.ordinal()] += delta;
+            }
+            hours[slot(eventMinute / MINUTES_PER_HOUR, HOURS_PER_WEEK)] += delta;
+            sums[Window.WEEK.ordinal()] += delta;
+            return true;
+        }
+
+        // Освобождает корзины, вышедшие из окон; возвращает, изменились ли суммы окон
+        private boolean advanceTo(long target) {
+            if (target <= minute) {
+                return false;
+            }
+            if (target - minute >= MINUTES_PER_WEEK) {
+                Arrays.fill(minutes, 0);
+                Arrays.fill(hours, 0);
+                Arrays.fill(sums, 0);
+                minute = target;
+                return true;
+            }
+            int[] before = sums.clone();
+            while (minute < target) {
+                minute++;
+                int minuteSlot = slot(minute, MINUTES_PER_HOUR);
+                sums[Window.HOUR.ordinal()] -= minutes[minuteSlot];
+                minutes[minuteSlot] = 0;
+                if (minute % MINUTES_PER_HOUR == 0) {
+                    long hour = minute / MINUTES_PER_HOUR;
+                    sums[Window.DAY.ordinal()] -= hours[slot(hour - HOURS_PER_DAY, HOURS_PER_WEEK)];
+                    int hourSlot = slot(hour, HOURS_PER_WEEK);
+                    sums[Window.WEEK.ordinal()] -= hours[hourSlot];
+                    hours[hourSlot] = 0;
+                }
+            }
+            return !Arrays.equals(before, sums);
+        }
+
+        private boolean isEmpty() {
+            return Arrays.stream(hours).allMatch(count -> count == 0)
+                    && Arrays.stream(minutes).allMatch(count -> count == 0);
+        }
+    }
+}
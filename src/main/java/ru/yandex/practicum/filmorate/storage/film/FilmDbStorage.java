@@ -1,52 +1,128 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.dao.DuplicateKeyException;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.DuplicateDataException;
 import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.Mpa;
-import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.IdPairConsumer;
+import ru.yandex.practicum.filmorate.storage.IdPresenceIndex;
+import ru.yandex.practicum.filmorate.storage.SortedRowCursor;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 @Component
 @Slf4j
 @Qualifier("filmDbStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
 public class FilmDbStorage implements FilmStorage {
+    private static final int STREAM_FETCH_SIZE = 500;
+    // Ограничивает выборки оценок и жанров последним фильмом страницы: без верхней границы H2
+    // прочитает все строки после курсора, а не только строки фильмов страницы
+    private static final String PAGE_BOUND = " AND film_id <= (SELECT MAX(film_id) FROM "
+            + "(SELECT film_id FROM films WHERE film_id > ? ORDER BY film_id LIMIT ?))";
     private final JdbcTemplate jdbcTemplate;
-    private final GenreDbStorage genreDbStorage;
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final IdPresenceIndex filmIds = new IdPresenceIndex();
+    private final SimpleJdbcInsert filmInsert;
 
     @Autowired
-    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+    public FilmDbStorage(JdbcTemplate jdbcTemplate,
+                         @Qualifier("cachedGenreStorage") GenreStorage genreStorage,
+                         @Qualifier("cachedMpaStorage") MpaStorage mpaStorage) {
         this.jdbcTemplate = jdbcTemplate;
-        this.genreDbStorage = new GenreDbStorage(jdbcTemplate);
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.filmInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("films")
+                .usingColumns("name", "description", "release_date", "duration", "mpa_id")
+                .usingGeneratedKeyColumns("film_id");
     }
 
 
     @Override
+    @Transactional
     public Film createFilm(Film film) {
         int filmId = addFilmToDb(film);
         film.setId(filmId);
-        Set<Genre> genres = film.getGenres();
-        if (!genres.isEmpty()) {
-            insertFilmGenres(film.getId(), genres);
-        }
+        filmIds.add(filmId);
+        batchFilmGenres("INSERT INTO film_genre (film_id, genre_id) VALUES (?,?)", filmId, genreIdsOf(film));
         return film;
     }
 
     @Override
+    @Transactional
+    public List<Film> createFilms(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        String sqlQuery = "INSERT INTO films (name, description, release_date, duration, mpa_id) VALUES (?,?,?,?,?)";
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sqlQuery, new String[]{"film_id"})) {
+                for (Film film : films) {
+                    ps.setString(1, film.getName());
+                    ps.setString(2, film.getDescription());
+                    ps.setObject(3, film.getReleaseDate());
+                    ps.setInt(4, film.getDuration());
+                    ps.setInt(5, film.getMpa().getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        keys.next();
+                        film.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+
+        List<Object[]> filmGenres = new ArrayList<>();
+        films.forEach(film -> genreIdsOf(film).forEach(genreId -> filmGenres.add(new Object[]{film.getId(), genreId})));
+        if (!filmGenres.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO film_genre (film_id, genre_id) VALUES (?,?)", filmGenres);
+        }
+        films.forEach(film -> filmIds.add(film.getId()));
+        return films;
+    }
+
+    @Override
+    @Transactional
     public Film updateFilm(Film film) {
         checkFilmId(film.getId());
         String sqlQuery = "UPDATE films SET " +
@@ -59,30 +135,170 @@ public class FilmDbStorage implements FilmStorage {
                 film.getDuration(),
                 film.getMpa().getId(),
                 film.getId());
-        String sqlQuery2 = "DELETE FROM film_genre WHERE film_id=?";
-        jdbcTemplate.update(sqlQuery2, film.getId());
 
-        if (film.getGenres() != null && !film.getGenres().isEmpty()) {
-            Set<Genre> genres = film.getGenres();
-            insertFilmGenres(film.getId(), genres);
-        }
+        Set<Integer> storedGenreIds = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT genre_id FROM film_genre WHERE film_id=?", Integer.class, film.getId()));
+        Set<Integer> genreIds = genreIdsOf(film);
+        Set<Integer> addedGenreIds = new HashSet<>(genreIds);
+        addedGenreIds.removeAll(storedGenreIds);
+        storedGenreIds.removeAll(genreIds);
+
+        batchFilmGenres("DELETE FROM film_genre WHERE film_id=? AND genre_id=?", film.getId(), storedGenreIds);
+        batchFilmGenres("INSERT INTO film_genre (film_id, genre_id) VALUES (?,?)", film.getId(), addedGenreIds);
         return film;
     }
 
     @Override
     public Film getFilmById(int filmId) {
         checkFilmId(filmId);
-        String sqlQuery = "SELECT f.*, mpa.mpa_name FROM films AS f JOIN mpa ON f.mpa_id=mpa.mpa_id WHERE f.film_id=?";
-        return jdbcTemplate.queryForObject(sqlQuery, this::makeFilm, filmId);
+        String sqlQuery = "SELECT * FROM films WHERE film_id=?";
+        Film film = jdbcTemplate.queryForObject(sqlQuery, this::makeFilm, filmId);
+        return fillLikesAndGenres(List.of(film), " WHERE film_id=?", filmId).get(0);
     }
 
     @Override
     public List<Film> getAllFilms() {
-        String sqlQuery = "SELECT f.*, mpa.mpa_name FROM films AS f JOIN mpa ON f.mpa_id=mpa.mpa_id";
-        return jdbcTemplate.query(sqlQuery, this::makeFilm);
+        String sqlQuery = "SELECT * FROM films ORDER BY film_id";
+        return fillLikesAndGenres(jdbcTemplate.query(sqlQuery, this::makeFilm), "");
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count) {
+        String sqlQuery = "SELECT * FROM films ORDER BY likes_count DESC, film_id LIMIT ?";
+        List<Film> films = jdbcTemplate.query(sqlQuery, this::makeFilm, count);
+        return fillLikesAndGenres(films, inCondition(films.size()), idsOf(films));
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (genreId != null) {
+            conditions.add("EXISTS (SELECT 1 FROM film_genre fg WHERE fg.film_id = f.film_id AND fg.genre_id = ?)");
+            args.add(genreId);
+        }
+        if (mpaId != null) {
+            conditions.add("f.mpa_id = ?");
+            args.add(mpaId);
+        }
+        if (year != null) {
+            conditions.add("f.release_date >= ? AND f.release_date < ?");
+            args.add(LocalDate.of(year, 1, 1));
+            args.add(LocalDate.of(year + 1, 1, 1));
+        }
+        args.add(count);
+        String sqlQuery = "SELECT f.* FROM films f"
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + " ORDER BY f.likes_count DESC, f.film_id LIMIT ?";
+        List<Film> films = jdbcTemplate.query(sqlQuery, this::makeFilm, args.toArray());
+        return fillLikesAndGenres(films, inCondition(films.size()), idsOf(films));
+    }
+
+    @Override
+    public List<Film> getFilms(int afterId, int size) {
+        String sqlQuery = "SELECT * FROM films WHERE film_id > ? ORDER BY film_id LIMIT ?";
+        List<Film> films = jdbcTemplate.query(sqlQuery, this::makeFilm, afterId, size);
+        return fillLikesAndGenres(films, inCondition(films.size()), idsOf(films));
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(Collection<Integer> ids) {
+        Object[] distinctIds = ids.stream().distinct().toArray();
+        if (distinctIds.length == 0) {
+            return new ArrayList<>();
+        }
+        String sqlQuery = "SELECT * FROM films" + inCondition(distinctIds.length) + " ORDER BY film_id";
+        List<Film> films = jdbcTemplate.query(sqlQuery, this::makeFilm, distinctIds);
+        return fillLikesAndGenres(films, inCondition(films.size()), idsOf(films));
     }
 
     @Override
+    public void forEachFilm(Consumer<Film> action) {
+        String sqlQuery = "SELECT * FROM films ORDER BY film_id";
+        List<Film> chunk = new ArrayList<>(STREAM_FETCH_SIZE);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sqlQuery);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            chunk.add(makeFilm(rs, chunk.size()));
+            if (chunk.size() == STREAM_FETCH_SIZE) {
+                flushChunk(chunk, action);
+            }
+        });
+        flushChunk(chunk, action);
+    }
+
+    // Оценки не читаются вовсе, а жанры подмешиваются из упорядоченной по film_id выборки
+    @Override
+    public void forEachFilmWithoutLikes(Consumer<Film> action) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement films = prepareStream(connection, "SELECT * FROM films ORDER BY film_id");
+                 PreparedStatement genres = prepareStream(connection,
+                         "SELECT film_id, genre_id FROM film_genre ORDER BY film_id, genre_id");
+                 ResultSet filmRows = films.executeQuery();
+                 ResultSet genreRows = genres.executeQuery()) {
+                SortedRowCursor genreCursor = new SortedRowCursor(genreRows);
+                while (filmRows.next()) {
+                    Film film = makeFilm(filmRows, 0);
+                    for (; genreCursor.at(film.getId()); genreCursor.next()) {
+                        film.getGenres().add(genreStorage.getGenreById(genreCursor.value()));
+                    }
+                    action.accept(film);
+                }
+            }
+            return null;
+        });
+    }
+
+    // Три упорядоченные по film_id выборки сливаются на лету: фильм пишется в JSON, как только прочитан
+    @Override
+    public Integer writeFilms(int afterId, int size, JsonGenerator generator) {
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement films = prepareStream(connection,
+                         "SELECT * FROM films WHERE film_id > ? ORDER BY film_id LIMIT ?", afterId, size);
+                 PreparedStatement likes = prepareStream(connection,
+                         "SELECT film_id, user_id FROM likes WHERE film_id > ?" + PAGE_BOUND
+                                 + " ORDER BY film_id, user_id", afterId, afterId, size);
+                 PreparedStatement genres = prepareStream(connection,
+                         "SELECT film_id, genre_id FROM film_genre WHERE film_id > ?" + PAGE_BOUND
+                                 + " ORDER BY film_id, genre_id", afterId, afterId, size);
+                 ResultSet filmRows = films.executeQuery();
+                 ResultSet likeRows = likes.executeQuery();
+                 ResultSet genreRows = genres.executeQuery()) {
+                SortedRowCursor likeCursor = new SortedRowCursor(likeRows);
+                SortedRowCursor genreCursor = new SortedRowCursor(genreRows);
+                int count = 0;
+                int lastId = afterId;
+                generator.writeStartArray();
+                while (filmRows.next()) {
+                    lastId = filmRows.getInt("film_id");
+                    FilmJson.writeStart(generator, lastId, filmRows.getString("name"),
+                            filmRows.getString("description"), filmRows.getDate("release_date").toLocalDate(),
+                            filmRows.getInt("duration"));
+                    generator.writeStartArray();
+                    for (; likeCursor.at(lastId); likeCursor.next()) {
+                        generator.writeNumber(likeCursor.value());
+                    }
+                    generator.writeEndArray();
+                    generator.writeArrayFieldStart("genres");
+                    for (; genreCursor.at(lastId); genreCursor.next()) {
+                        FilmJson.writeGenre(generator, genreStorage.getGenreById(genreCursor.value()));
+                    }
+                    generator.writeEndArray();
+                    FilmJson.writeEnd(generator, mpaStorage.getMpaById(filmRows.getInt("mpa_id")));
+                    count++;
+                }
+                generator.writeEndArray();
+                return count == size ? lastId : null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    @Transactional
     public void addLike(int userId, int filmId) {
         checkFilmId(filmId);
         String sqlQuery = "INSERT INTO likes (user_id, film_id) VALUES (?, ?)";
@@ -92,9 +308,11 @@ public class FilmDbStorage implements FilmStorage {
             log.info("Нельзя оценить один и тот же фильм дважды!");
             throw new DuplicateDataException("Нельзя оценить один и тот же фильм дважды!");
         }
+        jdbcTemplate.update("UPDATE films SET likes_count = likes_count + 1 WHERE film_id=?", filmId);
     }
 
     @Override
+    @Transactional
     public void removeLike(int userId, int filmId) {
         checkFilmId(filmId);
         String sqlQuery = "DELETE FROM likes WHERE user_id = ? AND film_id = ?";
@@ -102,62 +320,229 @@ public class FilmDbStorage implements FilmStorage {
             log.info("Пользователь с id {} не ставил оценку фильму с id {}", userId, filmId);
             throw new SmthNotFoundException("Пользователь с id " + userId + " не ставил оценку фильму с id " + filmId);
         }
+        jdbcTemplate.update("UPDATE films SET likes_count = likes_count - 1 WHERE film_id=?", filmId);
+    }
+
+    // Уже существующие оценки пропускаются; по числу вставленных строк видно, какие оценки новые
+    @Override
+    @Transactional
+    public List<Like> addLikes(List<Like> likes) {
+        List<Like> addedLikes = new ArrayList<>();
+        if (likes.isEmpty()) {
+            return addedLikes;
+        }
+        String sqlQuery = "INSERT INTO likes (user_id, film_id) SELECT CAST(? AS INT), CAST(? AS INT) "
+                + "WHERE NOT EXISTS (SELECT 1 FROM likes WHERE user_id=? AND film_id=?)";
+        int[][] insertedRows = jdbcTemplate.batchUpdate(
+                sqlQuery,
+                likes,
+                likes.size(),
+                (PreparedStatement ps, Like like) -> {
+                    ps.setInt(1, like.getUserId());
+                    ps.setInt(2, like.getFilmId());
+                    ps.setInt(3, like.getUserId());
+                    ps.setInt(4, like.getFilmId());
+                });
+        for (int i = 0; i < likes.size(); i++) {
+            if (insertedRows[0][i] > 0) {
+                addedLikes.add(likes.get(i));
+            }
+        }
+        updateLikesCount(addedLikes, List.of());
+        return addedLikes;
+    }
+
+    @Override
+    @Transactional
+    public void updateLikes(List<Like> addedLikes, List<Like> removedLikes) {
+        batchLikes("MERGE INTO likes (user_id, film_id) KEY (user_id, film_id) VALUES (?,?)", addedLikes);
+        batchLikes("DELETE FROM likes WHERE user_id=? AND film_id=?", removedLikes);
+        updateLikesCount(addedLikes, removedLikes);
+    }
+
+    private void updateLikesCount(List<Like> addedLikes, List<Like> removedLikes) {
+        Set<Integer> touchedFilmIds = new TreeSet<>();
+        addedLikes.forEach(like -> touchedFilmIds.add(like.getFilmId()));
+        removedLikes.forEach(like -> touchedFilmIds.add(like.getFilmId()));
+        if (touchedFilmIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+                "UPDATE films SET likes_count = (SELECT COUNT(*) FROM likes WHERE film_id=?) WHERE film_id=?",
+                touchedFilmIds,
+                touchedFilmIds.size(),
+                (PreparedStatement ps, Integer filmId) -> {
+                    ps.setInt(1, filmId);
+                    ps.setInt(2, filmId);
+                });
+    }
+
+    @Override
+    public boolean hasLike(int userId, int filmId) {
+        String sqlQuery = "SELECT EXISTS (SELECT 1 FROM likes WHERE user_id=? AND film_id=?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sqlQuery, Boolean.class, userId, filmId));
+    }
+
+    @Override
+    public List<Integer> getLikedFilmIds(int userId) {
+        String sqlQuery = "SELECT film_id FROM likes WHERE user_id=? ORDER BY film_id";
+        return jdbcTemplate.queryForList(sqlQuery, Integer.class, userId);
+    }
+
+    @Override
+    public void forEachLike(IdPairConsumer action) {
+        String sqlQuery = "SELECT user_id, film_id FROM likes";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sqlQuery);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(rs.getInt("user_id"), rs.getInt("film_id")));
+    }
+
+    @Override
+    public void forEachLikeCount(IdPairConsumer action) {
+        String sqlQuery = "SELECT f.film_id, COUNT(l.user_id) FROM films f "
+                + "LEFT JOIN likes l ON l.film_id = f.film_id GROUP BY f.film_id";
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) rs -> action.accept(rs.getInt(1), rs.getInt(2)));
+    }
+
+    @Override
+    public void forEachLikeCount(Collection<Integer> filmIds, IdPairConsumer action) {
+        Object[] distinctIds = filmIds.stream().distinct().toArray();
+        if (distinctIds.length == 0) {
+            return;
+        }
+        String sqlQuery = "SELECT f.film_id, COUNT(l.user_id) FROM films f "
+                + "LEFT JOIN likes l ON l.film_id = f.film_id "
+                + "WHERE f.film_id IN (" + String.join(",", Collections.nCopies(distinctIds.length, "?")) + ") "
+                + "GROUP BY f.film_id";
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) rs -> action.accept(rs.getInt(1), rs.getInt(2)),
+                distinctIds);
+    }
+
+    @Override
+    public void forEachLikeSince(Instant since, ObjIntConsumer<Instant> action) {
+        String sqlQuery = "SELECT film_id, created_at FROM likes WHERE created_at >= ?";
+        jdbcTemplate.query(connection -> prepareStream(connection, sqlQuery, Timestamp.from(since)),
+                (RowCallbackHandler) rs -> action.accept(rs.getTimestamp("created_at").toInstant(),
+                        rs.getInt("film_id")));
+    }
+
+    private static PreparedStatement prepareStream(Connection connection, String sqlQuery, Object... args)
+            throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sqlQuery);
+        ps.setFetchSize(STREAM_FETCH_SIZE);
+        for (int i = 0; i < args.length; i++) {
+            ps.setObject(i + 1, args[i]);
+        }
+        return ps;
     }
 
     private Film makeFilm(ResultSet rs, int rowNum) throws SQLException {
-        Film film = Film.builder()
+        return Film.builder()
                 .id(rs.getInt("film_id"))
                 .name(rs.getString("name"))
                 .description(rs.getString("description"))
                 .releaseDate(rs.getDate("release_date").toLocalDate())
                 .duration(rs.getInt("duration"))
-                .mpa(new Mpa(rs.getInt("mpa_id"), rs.getString("mpa_name")))
+                .mpa(mpaStorage.getMpaById(rs.getInt("mpa_id")))
                 .build();
+    }
 
-        String sqlQuery = "SELECT user_id FROM likes WHERE film_id=?";
-        film.getLikes().addAll(jdbcTemplate.query(
-                        sqlQuery,
-                        (rs1, rowNum1) -> rs1.getInt("user_id"),
-                        film.getId()
-                )
-        );
-        film.getGenres().addAll(genreDbStorage.getGenresForFilm(film.getId()));
-        return film;
+    private List<Film> fillLikesAndGenres(List<Film> films, String condition, Object... args) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        Map<Integer, Film> filmsById = new HashMap<>();
+        films.forEach(film -> filmsById.put(film.getId(), film));
+
+        // В порядке возрастания SortedIntSet дописывает оценки в конец массива, без сдвигов
+        String likesQuery = "SELECT film_id, user_id FROM likes" + condition + " ORDER BY film_id, user_id";
+        jdbcTemplate.query(likesQuery, (RowCallbackHandler) rs -> {
+            Film film = filmsById.get(rs.getInt("film_id"));
+            if (film != null) {
+                film.getLikes().add(rs.getInt("user_id"));
+            }
+        }, args);
+
+        String genresQuery = "SELECT film_id, genre_id FROM film_genre" + condition;
+        jdbcTemplate.query(genresQuery, (RowCallbackHandler) rs -> {
+            Film film = filmsById.get(rs.getInt("film_id"));
+            if (film != null) {
+                film.getGenres().add(genreStorage.getGenreById(rs.getInt("genre_id")));
+            }
+        }, args);
+        return films;
+    }
+
+    private void flushChunk(List<Film> chunk, Consumer<Film> action) {
+        fillLikesAndGenres(chunk, inCondition(chunk.size()), idsOf(chunk)).forEach(action);
+        chunk.clear();
+    }
+
+    private Object[] idsOf(List<Film> films) {
+        return films.stream().map(Film::getId).toArray();
+    }
+
+    private String inCondition(int size) {
+        return " WHERE film_id IN (" + String.join(",", Collections.nCopies(size, "?")) + ")";
     }
 
     private int addFilmToDb(Film film) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("films")
-                .usingGeneratedKeyColumns("film_id");
-        return simpleJdbcInsert.executeAndReturnKey(film.toMap()).intValue();
+        return filmInsert.executeAndReturnKey(film.toMap()).intValue();
     }
 
     private boolean dbContainsFilm(int filmId) {
-        String sqlQuery = "SELECT f.*, mpa.mpa_name FROM films AS f JOIN mpa ON f.mpa_id=mpa.mpa_id WHERE f.film_id=?";
-        try {
-            jdbcTemplate.queryForObject(sqlQuery, this::makeFilm, filmId);
-            return true;
-        } catch (EmptyResultDataAccessException e) {
-            return false;
+        String sqlQuery = "SELECT EXISTS (SELECT 1 FROM films WHERE film_id=?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sqlQuery, Boolean.class, filmId));
+    }
+
+    private Set<Integer> genreIdsOf(Film film) {
+        Set<Integer> genreIds = new HashSet<>();
+        if (film.getGenres() != null) {
+            film.getGenres().forEach(genre -> genreIds.add(genre.getId()));
+        }
+        return genreIds;
+    }
+
+    private void batchLikes(String sqlQuery, List<Like> likes) {
+        if (likes.isEmpty()) {
+            return;
         }
+        jdbcTemplate.batchUpdate(
+                sqlQuery,
+                likes,
+                likes.size(),
+                (PreparedStatement ps, Like like) -> {
+                    ps.setInt(1, like.getUserId());
+                    ps.setInt(2, like.getFilmId());
+                });
     }
 
-    private void insertFilmGenres(int filmId, Set<Genre> genres) {
-        String sqlQuery = "INSERT INTO film_genre (film_id, genre_id) VALUES (?,?)";
+    private void batchFilmGenres(String sqlQuery, int filmId, Collection<Integer> genreIds) {
+        if (genreIds.isEmpty()) {
+            return;
+        }
         jdbcTemplate.batchUpdate(
                 sqlQuery,
-                genres,
-                genres.size(),
-                (PreparedStatement ps, Genre genre) -> {
+                genreIds,
+                genreIds.size(),
+                (PreparedStatement ps, Integer genreId) -> {
                     ps.setInt(1, filmId);
-                    ps.setInt(2, genre.getId());
+                    ps.setInt(2, genreId);
                 });
     }
 
-    private void checkFilmId(int filmId) {
-        if (!dbContainsFilm(filmId)) {
-            log.error("Фильм с id {} не существует!", filmId);
-            throw new SmthNotFoundException("Фильм с id " + filmId + " не существует!");
+    @Override
+    public void checkFilmId(int filmId) {
+        if (filmIds.contains(filmId)) {
+            return;
+        }
+        if (dbContainsFilm(filmId)) {
+            filmIds.add(filmId);
+            return;
         }
+        log.error("Фильм с id {} не существует!", filmId);
+        throw new SmthNotFoundException("Фильм с id " + filmId + " не существует!");
     }
 }
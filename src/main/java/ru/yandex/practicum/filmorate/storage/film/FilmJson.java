@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+// Запись фильма в JSON в том же виде и порядке полей, что и сериализация модели Film
+final class FilmJson {
+    private FilmJson() {
+    }
+
+    static void write(JsonGenerator generator, Film film) throws IOException {
+        writeStart(generator, film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration());
+        generator.writeArray(film.getLikes().toIntArray(), 0, film.getLikes().size());
+        generator.writeArrayFieldStart("genres");
+        for (Genre genre : film.getGenres()) {
+            writeGenre(generator, genre);
+        }
+        generator.writeEndArray();
+        writeEnd(generator, film.getMpa());
+    }
+
+    // Оставляет открытым поле likes: следом пишутся id оценивших, жанры и рейтинг
+    static void writeStart(JsonGenerator generator, int id, String name, String description,
+                           LocalDate releaseDate, int duration) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", id);
+        generator.writeStringField("name", name);
+        generator.writeStringField("description", description);
+        if (releaseDate == null) {
+            generator.writeNullField("releaseDate");
+        } else {
+            generator.writeStringField("releaseDate", releaseDate.toString());
+        }
+        generator.writeNumberField("duration", duration);
+        generator.writeFieldName("likes");
+    }
+
+    static void writeGenre(JsonGenerator generator, Genre genre) throws IOException {
+        generator.writeStartObject();
+        if (genre.getId() == null) {
+            generator.writeNullField("id");
+        } else {
+            generator.writeNumberField("id", genre.getId());
+        }
+        generator.writeStringField("name", genre.getName());
+        generator.writeEndObject();
+    }
+
+    static void writeEnd(JsonGenerator generator, Mpa mpa) throws IOException {
+        if (mpa == null) {
+            generator.writeNullField("mpa");
+        } else {
+            generator.writeObjectFieldStart("mpa");
+            generator.writeNumberField("id", mpa.getId());
+            generator.writeStringField("name", mpa.getName());
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+}
@@ -1,19 +1,67 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.IdPairConsumer;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 public interface FilmStorage {
     Film createFilm(Film film);
 
+    List<Film> createFilms(List<Film> films);
+
     Film updateFilm(Film film);
 
     Film getFilmById(int filmId);
 
     List<Film> getAllFilms();
 
-    void addLike(int id, int userId);
+    List<Film> getFilms(int afterId, int size);
+
+    List<Film> getFilmsByIds(Collection<Integer> ids);
+
+    void forEachFilm(Consumer<Film> action);
+
+    // Фильмы с жанрами и рейтингом MPA, но без оценок: для индексов, которым оценки не нужны
+    void forEachFilmWithoutLikes(Consumer<Film> action);
+
+    // Пишет JSON-массив фильмов с id больше afterId, не больше size штук; возвращает id последнего,
+    // если страница заполнена целиком, иначе null
+    Integer writeFilms(int afterId, int size, JsonGenerator generator);
+
+    List<Film> getPopularFilms(int count);
+
+    // Самые популярные фильмы среди подходящих под все заданные фильтры; null - фильтр не задан
+    List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year);
+
+    void checkFilmId(int filmId);
+
+    void addLike(int userId, int filmId);
+
+    void removeLike(int userId, int filmId);
+
+    // Возвращает только оценки, которых ещё не было
+    List<Like> addLikes(List<Like> likes);
+
+    void updateLikes(List<Like> addedLikes, List<Like> removedLikes);
+
+    boolean hasLike(int userId, int filmId);
+
+    List<Integer> getLikedFilmIds(int userId);
+
+    void forEachLike(IdPairConsumer action);
+
+    // Число оценок каждого фильма, посчитанное по таблице оценок: (id фильма, число оценок)
+    void forEachLikeCount(IdPairConsumer action);
+
+    void forEachLikeCount(Collection<Integer> filmIds, IdPairConsumer action);
 
-    void removeLike(int id, int userId);
+    // Оценки, поставленные начиная с since: (время оценки, id фильма)
+    void forEachLikeSince(Instant since, ObjIntConsumer<Instant> action);
 }
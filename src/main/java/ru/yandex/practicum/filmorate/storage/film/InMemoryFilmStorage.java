@@ -1,23 +1,66 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.DuplicateDataException;
 import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.IdPairConsumer;
+import ru.yandex.practicum.filmorate.storage.PopularityRanking;
+import ru.yandex.practicum.filmorate.storage.StripedLocks;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
 
+// Фильмы хранятся копиями и наружу тоже отдаются копиями, поэтому чтения не берут блокировок.
+// Оценки фильма меняются под блокировкой его полосы вместе с позицией в рейтинге популярности
 @Component
 @Slf4j
 @Qualifier("inMemoryFilmStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
 public class InMemoryFilmStorage implements FilmStorage {
-    private static int idCounter = 0;
-    private final Map<Integer, Film> films = new HashMap<>();
+    private static final int LOCK_STRIPES = 256;
     private static final int MAX_DESCRIPTION_LENGTH = 200;
     private static final LocalDate MIN_RELEASE_DATE = LocalDate.of(1895,12,28);
+    private final AtomicInteger idCounter = new AtomicInteger();
+    private final ConcurrentNavigableMap<Integer, Film> films = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Set<Integer>> likes = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> likedFilms = new ConcurrentHashMap<>();
+    private final PopularityRanking popularity = new PopularityRanking();
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+
+    // Жанры и рейтинги берутся из справочников в памяти, поэтому запросы к фильмам в БД не ходят
+    @Autowired
+    public InMemoryFilmStorage(GenreStorage genreStorage, MpaStorage mpaStorage) {
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+    }
+
+    public InMemoryFilmStorage() {
+        this(null, null);
+    }
 
     @Override
     public Film createFilm(Film film) {
@@ -25,47 +68,250 @@ public class InMemoryFilmStorage implements FilmStorage {
             log.error("Фильм с id {} уже существует!", film.getId());
             throw new ValidationException("Фильм с id " + film.getId() + " уже существует!");
         }
-        idCounter++;
         validateFilm(film);
-        film.setId(idCounter);
-        films.put(idCounter,film);
+        resolveReferences(film);
+        int filmId = idCounter.incrementAndGet();
+        film.setId(filmId);
+        likes.put(filmId, ConcurrentHashMap.newKeySet());
+        films.put(filmId, copyOf(film, Set.of()));
+        popularity.add(filmId);
         return film;
     }
 
+    @Override
+    public List<Film> createFilms(List<Film> films) {
+        films.forEach(this::createFilm);
+        return films;
+    }
+
     @Override
     public Film updateFilm(Film film) {
         checkFilmId(film.getId());
         validateFilm(film);
-        films.put(film.getId(), film);
-        return film;
+        resolveReferences(film);
+        films.put(film.getId(), copyOf(film, Set.of()));
+        return getFilmById(film.getId());
     }
 
     @Override
     public Film getFilmById(int filmId) {
-        checkFilmId(filmId);
-        return this.films.get(filmId);
+        Film film = films.get(filmId);
+        if (film == null) {
+            checkFilmId(filmId);
+        }
+        return snapshot(film);
     }
 
     @Override
     public List<Film> getAllFilms() {
-        return new ArrayList<>(films.values());
+        return films.values().stream()
+                .map(this::snapshot)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getFilms(int afterId, int size) {
+        return films.tailMap(afterId, false).values().stream()
+                .limit(size)
+                .map(this::snapshot)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(Collection<Integer> ids) {
+        return ids.stream()
+                .distinct()
+                .sorted()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(this::snapshot)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEachFilm(Consumer<Film> action) {
+        films.values().forEach(film -> action.accept(snapshot(film)));
+    }
+
+    @Override
+    public void forEachFilmWithoutLikes(Consumer<Film> action) {
+        films.values().forEach(film -> action.accept(copyOf(film, Set.of())));
+    }
+
+    @Override
+    public Integer writeFilms(int afterId, int size, JsonGenerator generator) {
+        int count = 0;
+        int lastId = afterId;
+        try {
+            generator.writeStartArray();
+            for (Film film : films.tailMap(afterId, false).values()) {
+                if (count == size) {
+                    break;
+                }
+                FilmJson.write(generator, snapshot(film));
+                lastId = film.getId();
+                count++;
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count == size ? lastId : null;
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count) {
+        return Arrays.stream(popularity.top(count))
+                .mapToObj(films::get)
+                .filter(Objects::nonNull)
+                .map(this::snapshot)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year) {
+        return Arrays.stream(popularity.top(count, filmId -> matches(films.get(filmId), genreId, mpaId, year)))
+                .mapToObj(films::get)
+                .filter(Objects::nonNull)
+                .map(this::snapshot)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void addLike(int userId, int filmId) {
+        checkFilmId(filmId);
+        if (!changeLike(userId, filmId, true)) {
+            log.info("Нельзя оценить один и тот же фильм дважды!");
+            throw new DuplicateDataException("Нельзя оценить один и тот же фильм дважды!");
+        }
     }
 
     @Override
-    public void addLike(int id, int userId) {
+    public void removeLike(int userId, int filmId) {
+        checkFilmId(filmId);
+        if (!changeLike(userId, filmId, false)) {
+            log.info("Пользователь с id {} не ставил оценку фильму с id {}", userId, filmId);
+            throw new SmthNotFoundException("Пользователь с id " + userId + " не ставил оценку фильму с id " + filmId);
+        }
+    }
+
+    @Override
+    public List<Like> addLikes(List<Like> likes) {
+        likes.forEach(like -> checkFilmId(like.getFilmId()));
+        return likes.stream()
+                .filter(like -> changeLike(like.getUserId(), like.getFilmId(), true))
+                .collect(Collectors.toList());
     }
 
     @Override
-    public void removeLike(int id, int userId) {
+    public void updateLikes(List<Like> addedLikes, List<Like> removedLikes) {
+        addedLikes.forEach(like -> checkFilmId(like.getFilmId()));
+        removedLikes.forEach(like -> checkFilmId(like.getFilmId()));
+        addedLikes.forEach(like -> changeLike(like.getUserId(), like.getFilmId(), true));
+        removedLikes.forEach(like -> changeLike(like.getUserId(), like.getFilmId(), false));
     }
 
-    private void checkFilmId(int filmId) {
+    @Override
+    public boolean hasLike(int userId, int filmId) {
+        checkFilmId(filmId);
+        return likes.get(filmId).contains(userId);
+    }
+
+    @Override
+    public List<Integer> getLikedFilmIds(int userId) {
+        return likedFilms.getOrDefault(userId, Set.of()).stream()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEachLike(IdPairConsumer action) {
+        likes.forEach((filmId, userIds) -> userIds.forEach(userId -> action.accept(userId, filmId)));
+    }
+
+    @Override
+    public void forEachLikeCount(IdPairConsumer action) {
+        likes.forEach((filmId, userIds) -> action.accept(filmId, userIds.size()));
+    }
+
+    @Override
+    public void forEachLikeCount(Collection<Integer> filmIds, IdPairConsumer action) {
+        filmIds.stream()
+                .distinct()
+                .filter(likes::containsKey)
+                .forEach(filmId -> action.accept(filmId, likes.get(filmId).size()));
+    }
+
+    // Время оценок в памяти не хранится, а сами оценки не переживают перезапуск: восстанавливать нечего
+    @Override
+    public void forEachLikeSince(Instant since, ObjIntConsumer<Instant> action) {
+    }
+
+    @Override
+    public void checkFilmId(int filmId) {
         if (!films.containsKey(filmId)) {
             log.error("Фильм с id {} не существует!", filmId);
             throw new SmthNotFoundException("Фильм с id " + filmId + " не существует!");
         }
     }
 
+    private boolean changeLike(int userId, int filmId, boolean liked) {
+        Lock lock = locks.forId(filmId);
+        lock.lock();
+        try {
+            Set<Integer> filmLikes = likes.get(filmId);
+            if (liked ? !filmLikes.add(userId) : !filmLikes.remove(userId)) {
+                return false;
+            }
+            if (liked) {
+                likedFilms.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(filmId);
+            } else {
+                likedFilms.get(userId).remove(filmId);
+            }
+            popularity.set(filmId, filmLikes.size());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resolveReferences(Film film) {
+        if (mpaStorage != null && film.getMpa() != null) {
+            film.setMpa(mpaStorage.getMpaById(film.getMpa().getId()));
+        }
+        if (genreStorage != null && !film.getGenres().isEmpty()) {
+            List<Genre> genres = film.getGenres().stream()
+                    .map(genre -> genreStorage.getGenreById(genre.getId()))
+                    .collect(Collectors.toList());
+            film.getGenres().clear();
+            film.getGenres().addAll(genres);
+        }
+    }
+
+    private Film snapshot(Film film) {
+        return copyOf(film, likes.getOrDefault(film.getId(), Set.of()));
+    }
+
+    private static Film copyOf(Film film, Collection<Integer> filmLikes) {
+        Film copy = Film.builder()
+                .id(film.getId())
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .mpa(film.getMpa())
+                .build();
+        copy.getGenres().addAll(film.getGenres());
+        copy.getLikes().addAll(filmLikes);
+        return copy;
+    }
+
+    private static boolean matches(Film film, Integer genreId, Integer mpaId, Integer year) {
+        return film != null
+                && (genreId == null || film.getGenres().stream().anyMatch(genre -> genre.getId() == genreId))
+                && (mpaId == null || film.getMpa() != null && film.getMpa().getId() == mpaId)
+                && (year == null || film.getReleaseDate() != null && film.getReleaseDate().getYear() == year);
+    }
 
     private void validateFilm(Film film) {
         if (film.getName() == null || film.getName().isBlank()) {
@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.storage.genre;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataCache;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+@Component
+@Slf4j
+@Qualifier("cachedGenreStorage")
+@Primary
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
+public class CachedGenreStorage implements GenreStorage {
+    private final ReferenceDataCache<Genre> cache;
+
+    @Autowired
+    public CachedGenreStorage(@Qualifier("genreDbStorage") GenreStorage genreStorage) {
+        this.cache = new ReferenceDataCache<>(genreStorage::getAllGenres, Genre::getId);
+    }
+
+    @PostConstruct
+    public void load() {
+        cache.reload();
+    }
+
+    @Override
+    public List<Genre> getAllGenres() {
+        return cache.getAll();
+    }
+
+    @Override
+    public Genre getGenreById(int id) {
+        Genre genre = cache.get(id);
+        if (genre == null) {
+            log.error("Жанр с id {} не существует!", id);
+            throw new SmthNotFoundException("Жанр с id " + id + " не существует!");
+        }
+        return genre;
+    }
+
+    public void invalidate() {
+        cache.invalidate();
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+}
@@ -2,6 +2,8 @@ package ru.yandex.practicum.filmorate.storage.genre;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
@@ -10,14 +12,12 @@ import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
 
 @Component
 @Slf4j
+@Qualifier("genreDbStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
 public class GenreDbStorage implements GenreStorage {
     private final JdbcTemplate jdbcTemplate;
 
@@ -28,10 +28,8 @@ public class GenreDbStorage implements GenreStorage {
 
     @Override
     public List<Genre> getAllGenres() {
-        String sqlQuery = "SELECT * FROM genre";
-        return jdbcTemplate.query(sqlQuery, this::makeGenre).stream()
-                .sorted(Comparator.comparingInt(Genre::getId))
-                .collect(Collectors.toList());
+        String sqlQuery = "SELECT * FROM genre ORDER BY genre_id";
+        return jdbcTemplate.query(sqlQuery, this::makeGenre);
     }
 
     @Override
@@ -47,12 +45,6 @@ public class GenreDbStorage implements GenreStorage {
         return genre;
     }
 
-    public Set<Genre> getGenresForFilm(int filmId) {
-        String sqlQuery = "SELECT g.genre_id, g.genre_name FROM film_genre AS fg " +
-                "JOIN genre AS g ON fg.genre_id=g.genre_id WHERE fg.film_id=?";
-        return new TreeSet<>(jdbcTemplate.query(sqlQuery, this::makeGenre, filmId));
-    }
-
     private Genre makeGenre(ResultSet rs, int rowNum) throws SQLException {
         return Genre.builder()
                 .id(rs.getInt("genre_id"))
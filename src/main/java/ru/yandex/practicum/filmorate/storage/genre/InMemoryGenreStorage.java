@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.storage.genre;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.List;
+
+// Тот же справочник, что data.sql кладёт в БД, чтобы хранение в памяти обходилось без источника данных
+@Component
+@Slf4j
+@Qualifier("inMemoryGenreStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
+public class InMemoryGenreStorage implements GenreStorage {
+    private static final List<Genre> GENRES = List.of(
+            new Genre(1, "Комедия"),
+            new Genre(2, "Драма"),
+            new Genre(3, "Мультфильм"),
+            new Genre(4, "Триллер"),
+            new Genre(5, "Документальный"),
+            new Genre(6, "Боевик"));
+
+    @Override
+    public List<Genre> getAllGenres() {
+        return GENRES;
+    }
+
+    @Override
+    public Genre getGenreById(int id) {
+        if (id < 1 || id > GENRES.size()) {
+            log.error("Жанр с id {} не существует!", id);
+            throw new SmthNotFoundException("Жанр с id " + id + " не существует!");
+        }
+        return GENRES.get(id - 1);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.storage.mpa;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataCache;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+@Component
+@Slf4j
+@Qualifier("cachedMpaStorage")
+@Primary
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
+public class CachedMpaStorage implements MpaStorage {
+    private final ReferenceDataCache<Mpa> cache;
+
+    @Autowired
+    public CachedMpaStorage(@Qualifier("mpaDbStorage") MpaStorage mpaStorage) {
+        this.cache = new ReferenceDataCache<>(mpaStorage::getAllMpas, Mpa::getId);
+    }
+
+    @PostConstruct
+    public void load() {
+        cache.reload();
+    }
+
+    @Override
+    public List<Mpa> getAllMpas() {
+        return cache.getAll();
+    }
+
+    @Override
+    public Mpa getMpaById(int id) {
+        Mpa mpa = cache.get(id);
+        if (mpa == null) {
+            log.error("Тип рейтинга с id {} не существует!", id);
+            throw new SmthNotFoundException("Тип рейтинга с id " + id + " не существует!");
+        }
+        return mpa;
+    }
+
+    public void invalidate() {
+        cache.invalidate();
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+}
@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.storage.mpa;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.util.List;
+
+// Тот же справочник, что data.sql кладёт в БД, чтобы хранение в памяти обходилось без источника данных
+@Component
+@Slf4j
+@Qualifier("inMemoryMpaStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
+public class InMemoryMpaStorage implements MpaStorage {
+    private static final List<Mpa> MPAS = List.of(
+            new Mpa(1, "G"),
+            new Mpa(2, "PG"),
+            new Mpa(3, "PG-13"),
+            new Mpa(4, "R"),
+            new Mpa(5, "NC-17"));
+
+    @Override
+    public List<Mpa> getAllMpas() {
+        return MPAS;
+    }
+
+    @Override
+    public Mpa getMpaById(int id) {
+        if (id < 1 || id > MPAS.size()) {
+            log.error("Тип рейтинга с id {} не существует!", id);
+            throw new SmthNotFoundException("Тип рейтинга с id " + id + " не существует!");
+        }
+        return MPAS.get(id - 1);
+    }
+}
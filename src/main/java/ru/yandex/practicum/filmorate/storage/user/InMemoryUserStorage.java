@@ -1,22 +1,45 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.DuplicateDataException;
 import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.IdPairConsumer;
+import ru.yandex.practicum.filmorate.storage.StripedLocks;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+// Дружба, как и в БД, односторонняя: список друзей пользователя меняется только под блокировкой его полосы
 @Component
 @Slf4j
+@Qualifier("inMemoryUserStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
 public class InMemoryUserStorage implements UserStorage {
-    private static int userId = 0;
-    private final Map<Integer, User> users = new HashMap<>();
+    private static final int LOCK_STRIPES = 256;
+    private final AtomicInteger idCounter = new AtomicInteger();
+    private final ConcurrentNavigableMap<Integer, User> users = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Set<Integer>> friends = new ConcurrentHashMap<>();
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
 
     @Override
     public User createUser(User user) {
@@ -25,73 +48,209 @@ public class InMemoryUserStorage implements UserStorage {
             throw new ValidationException("Пользователь с id " + user.getId() + " уже существует!");
         }
         validateUser(user);
-        user.setId(++userId);
-        users.put(userId, user);
+        user.getFriends().forEach(this::checkUserId);
+        int userId = idCounter.incrementAndGet();
+        user.setId(userId);
+        Set<Integer> friendIds = ConcurrentHashMap.newKeySet();
+        friendIds.addAll(user.getFriends());
+        friends.put(userId, friendIds);
+        users.put(userId, copyOf(user, Set.of()));
         return user;
     }
 
+    @Override
+    public List<User> createUsers(List<User> users) {
+        users.forEach(this::createUser);
+        return users;
+    }
+
     @Override
     public User updateUser(User user) {
-        checkUserId(userId);
+        checkUserId(user.getId());
         validateUser(user);
-        users.put(user.getId(), user);
+        Set<Integer> friendIds = user.getFriends() == null ? Set.of() : user.getFriends();
+        friendIds.forEach(this::checkUserId);
+        Lock lock = locks.forId(user.getId());
+        lock.lock();
+        try {
+            Set<Integer> stored = friends.get(user.getId());
+            stored.retainAll(friendIds);
+            stored.addAll(friendIds);
+            users.put(user.getId(), copyOf(user, Set.of()));
+        } finally {
+            lock.unlock();
+        }
         return user;
     }
 
     @Override
     public User getUserById(int userId) {
-        checkUserId(userId);
-        return users.get(userId);
+        User user = users.get(userId);
+        if (user == null) {
+            checkUserId(userId);
+        }
+        return snapshot(user);
     }
 
     @Override
     public List<User> getAllUsers() {
-       return new ArrayList<>(users.values());
+        return users.values().stream()
+                .map(this::snapshot)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<User> getUsers(int afterId, int size) {
+        return users.tailMap(afterId, false).values().stream()
+                .limit(size)
+                .map(this::snapshot)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> action) {
+        users.values().forEach(user -> action.accept(snapshot(user)));
+    }
+
+    @Override
+    public Integer writeUsers(int afterId, int size, JsonGenerator generator) {
+        int count = 0;
+        int lastId = afterId;
+        try {
+            generator.writeStartArray();
+            for (User user : users.tailMap(afterId, false).values()) {
+                if (count == size) {
+                    break;
+                }
+                UserJson.write(generator, snapshot(user));
+                lastId = user.getId();
+                count++;
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count == size ? lastId : null;
     }
 
     @Override
     public User addFriend(int userId, int friendId) {
         checkUserId(userId);
         checkUserId(friendId);
-        User user1 = getUserById(userId);
-        User user2 = getUserById(friendId);
-
-        user1.getFriends().add(friendId);
-        user2.getFriends().add(userId);
-        log.info("Пользователь с id={} добавлен в список друзей пользователя с id={}", friendId, userId);
-        return user1;
+        if (userId == friendId) {
+            log.info("Нельзя добавить самого себя в друзья!");
+            throw new ValidationException("Нельзя добавить самого себя в друзья!");
+        }
+        if (!changeFriend(userId, friendId, true)) {
+            log.info("Нельзя добавить в друзья одного и того же человека дважды!");
+            throw new DuplicateDataException("Нельзя добавить в друзья одного и того же человека дважды!");
+        }
+        return getUserById(userId);
     }
 
     @Override
     public User removeFriend(int userId, int friendId) {
         checkUserId(userId);
         checkUserId(friendId);
-        User user1 = getUserById(userId);
-        User user2 = getUserById(friendId);
-
-        if (!user1.getFriends().contains(friendId)) {
-            log.info("Пользователя с id={} нет в списке друзей пользователя с id={}", friendId, userId);
-            throw new SmthNotFoundException("Пользователя с id=" + friendId + " нет в списке друзей пользователя с id=" + userId);
+        if (!changeFriend(userId, friendId, false)) {
+            log.info("Пользователя с id {} нет в друзьях у пользователя с id {}", userId, friendId);
+            throw new SmthNotFoundException("Пользователя с id " + userId + " нет в друзьях у пользователя с id " + friendId);
         }
+        return getUserById(userId);
+    }
 
-        user1.getFriends().remove(friendId);
-        user2.getFriends().remove(userId);
-        log.info("Пользователь с id={} добавлен в список друзей пользователя с id={}", friendId, userId);
-        return user1;
+    @Override
+    public void addFriends(List<Friendship> friendships) {
+        friendships.forEach(friendship -> {
+            checkUserId(friendship.getUserId());
+            checkUserId(friendship.getFriendId());
+        });
+        friendships.forEach(friendship -> changeFriend(friendship.getUserId(), friendship.getFriendId(), true));
     }
 
     @Override
     public List<Integer> getFriends(int id) {
-        return new ArrayList<>(getUserById(id).getFriends());
+        checkUserId(id);
+        return friends.get(id).stream()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<User> getFriendUsers(int id) {
+        checkUserId(id);
+        return friends.get(id).stream()
+                .sorted()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(this::snapshot)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEachFriendship(IdPairConsumer action) {
+        friends.forEach((userId, friendIds) -> friendIds.forEach(friendId -> action.accept(userId, friendId)));
+    }
+
+    @Override
+    public List<User> getMutualFriends(int userId, int otherId) {
+        checkUserId(userId);
+        checkUserId(otherId);
+        Set<Integer> otherFriends = friends.get(otherId);
+        return friends.get(userId).stream()
+                .filter(otherFriends::contains)
+                .sorted()
+                .map(users::get)
+                .map(this::snapshot)
+                .collect(Collectors.toList());
     }
 
-    private void checkUserId(int userId) {
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> ids) {
+        return ids.stream()
+                .distinct()
+                .sorted()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(this::snapshot)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void checkUserId(int userId) {
         if (!users.containsKey(userId)) {
             log.error("Пользователь с id {} не существует!", userId);
             throw new SmthNotFoundException("Пользователь с id " + userId + " не существует!");
         }
     }
 
+    private boolean changeFriend(int userId, int friendId, boolean added) {
+        Lock lock = locks.forId(userId);
+        lock.lock();
+        try {
+            Set<Integer> friendIds = friends.get(userId);
+            return added ? friendIds.add(friendId) : friendIds.remove(friendId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private User snapshot(User user) {
+        return copyOf(user, friends.getOrDefault(user.getId(), Set.of()));
+    }
+
+    private static User copyOf(User user, Collection<Integer> friendIds) {
+        User copy = User.builder()
+                .id(user.getId())
+                .email(user.getEmail())
+                .login(user.getLogin())
+                .name(user.getName())
+                .birthday(user.getBirthday())
+                .build();
+        copy.getFriends().addAll(friendIds);
+        return copy;
+    }
+
     private void validateUser(User user) {
         if (user.getEmail() == null || user.getEmail().isBlank() || !user.getEmail().contains("@")) {
             log.error("Электронная почта не может быть пустой и должна содержать @");
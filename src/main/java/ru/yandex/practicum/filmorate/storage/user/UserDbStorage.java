@@ -1,67 +1,146 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.dao.DuplicateKeyException;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.exception.DuplicateDataException;
 import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FriendshipIndex;
+import ru.yandex.practicum.filmorate.storage.IdPairConsumer;
+import ru.yandex.practicum.filmorate.storage.IdPresenceIndex;
+import ru.yandex.practicum.filmorate.storage.SortedRowCursor;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 @Qualifier("userDbStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
 public class UserDbStorage implements UserStorage {
+    private static final int STREAM_FETCH_SIZE = 500;
+    // Ограничивает выборку друзей последним пользователем страницы, иначе H2 прочитает
+    // всю таблицу relationship после курсора
+    private static final String PAGE_BOUND = " AND user_id <= (SELECT MAX(user_id) FROM "
+            + "(SELECT user_id FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?))";
     private final JdbcTemplate jdbcTemplate;
+    private final IdPresenceIndex userIds = new IdPresenceIndex();
+    private final FriendshipIndex friendIndex;
+    private final SimpleJdbcInsert userInsert;
 
     @Autowired
     public UserDbStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.userInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("users")
+                .usingColumns("email", "login", "name", "birthday")
+                .usingGeneratedKeyColumns("user_id");
+        this.friendIndex = new FriendshipIndex(this::forEachFriendship);
     }
 
     @Override
+    @Transactional
     public User createUser(User user) {
         int userId = addUserToDb(user);
         user.setId(userId);
-        String sqlQuery = "INSERT INTO relationship (user_id, friend_id) VALUES (?,?)";
-        if (!user.getFriends().isEmpty()) {
-            for (int id : user.getFriends()) {
-                jdbcTemplate.update(sqlQuery, userId, id);
+        userIds.add(userId);
+        batchFriends("INSERT INTO relationship (user_id, friend_id) VALUES (?,?)", userId, user.getFriends());
+        indexFriends(userId, user.getFriends(), Set.of());
+        return user;
+    }
+
+    @Override
+    @Transactional
+    public List<User> createUsers(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        String sqlQuery = "INSERT INTO users (email, login, name, birthday) VALUES (?,?,?,?)";
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sqlQuery, new String[]{"user_id"})) {
+                for (User user : users) {
+                    ps.setString(1, user.getEmail());
+                    ps.setString(2, user.getLogin());
+                    ps.setString(3, user.getName());
+                    ps.setObject(4, user.getBirthday());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (User user : users) {
+                        keys.next();
+                        user.setId(keys.getInt(1));
+                    }
+                }
             }
+            return null;
+        });
+
+        List<Object[]> friendships = new ArrayList<>();
+        users.forEach(user -> user.getFriends().forEach(friendId -> friendships.add(new Object[]{user.getId(), friendId})));
+        if (!friendships.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO relationship (user_id, friend_id) VALUES (?,?)", friendships);
         }
-        return user;
+        users.forEach(user -> {
+            userIds.add(user.getId());
+            indexFriends(user.getId(), user.getFriends(), Set.of());
+        });
+        return users;
     }
 
     @Override
+    @Transactional
     public User updateUser(User user) {
         checkUserId(user.getId());
-        String sqlQuery = "UPDATE users SET user_id=?, email=?, login=?, name=?, birthday=?";
+        String sqlQuery = "UPDATE users SET email=?, login=?, name=?, birthday=? WHERE user_id=?";
 
         jdbcTemplate.update(
                 sqlQuery,
-                user.getId(),
                 user.getEmail(),
                 user.getLogin(),
                 user.getName(),
-                user.getBirthday());
+                user.getBirthday(),
+                user.getId());
 
-        String sqlQuery2 = "DELETE FROM relationship WHERE user_id=?";
-        jdbcTemplate.update(sqlQuery2, user.getId());
-
-        if (user.getFriends() != null && !user.getFriends().isEmpty()) {
-            String sqlQuery3 = "INSERT INTO relationship (user_id, friend_id) VALUES (?,?)";
-            user.getFriends().forEach(id -> jdbcTemplate.update(sqlQuery3, user.getId(), id));
-        }
+        Set<Integer> storedFriendIds = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT friend_id FROM relationship WHERE user_id=?", Integer.class, user.getId()));
+        Set<Integer> friendIds = user.getFriends() == null ? Set.of() : user.getFriends();
+        Set<Integer> addedFriendIds = new HashSet<>(friendIds);
+        addedFriendIds.removeAll(storedFriendIds);
+        storedFriendIds.removeAll(friendIds);
 
+        batchFriends("DELETE FROM relationship WHERE user_id=? AND friend_id=?", user.getId(), storedFriendIds);
+        batchFriends("INSERT INTO relationship (user_id, friend_id) VALUES (?,?)", user.getId(), addedFriendIds);
+        indexFriends(user.getId(), addedFriendIds, storedFriendIds);
         return user;
     }
 
@@ -69,13 +148,73 @@ public class UserDbStorage implements UserStorage {
     public User getUserById(int userId) {
         checkUserId(userId);
         String sqlQuery = " SELECT * FROM users WHERE user_id=?";
-        return jdbcTemplate.queryForObject(sqlQuery, this::makeUser, userId);
+        User user = jdbcTemplate.queryForObject(sqlQuery, this::makeUser, userId);
+        return fillFriends(List.of(user), " WHERE user_id=?", userId).get(0);
     }
 
     @Override
     public List<User> getAllUsers() {
-        String sqlQuery = "SELECT * FROM users";
-        return jdbcTemplate.query(sqlQuery, this::makeUser);
+        String sqlQuery = "SELECT * FROM users ORDER BY user_id";
+        return fillFriends(jdbcTemplate.query(sqlQuery, this::makeUser), "");
+    }
+
+    @Override
+    public List<User> getUsers(int afterId, int size) {
+        String sqlQuery = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
+        List<User> users = jdbcTemplate.query(sqlQuery, this::makeUser, afterId, size);
+        return fillFriends(users, inCondition(users.size()), idsOf(users));
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> action) {
+        String sqlQuery = "SELECT * FROM users ORDER BY user_id";
+        List<User> chunk = new ArrayList<>(STREAM_FETCH_SIZE);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sqlQuery);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            chunk.add(makeUser(rs, chunk.size()));
+            if (chunk.size() == STREAM_FETCH_SIZE) {
+                flushChunk(chunk, action);
+            }
+        });
+        flushChunk(chunk, action);
+    }
+
+    // Пользователи и их друзья читаются двумя упорядоченными по user_id выборками и сразу пишутся в JSON
+    @Override
+    public Integer writeUsers(int afterId, int size, JsonGenerator generator) {
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement users = prepareStream(connection,
+                         "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?", afterId, size);
+                 PreparedStatement friends = prepareStream(connection,
+                         "SELECT user_id, friend_id FROM relationship WHERE user_id > ?" + PAGE_BOUND
+                                 + " ORDER BY user_id, friend_id", afterId, afterId, size);
+                 ResultSet userRows = users.executeQuery();
+                 ResultSet friendRows = friends.executeQuery()) {
+                SortedRowCursor friendCursor = new SortedRowCursor(friendRows);
+                int count = 0;
+                int lastId = afterId;
+                generator.writeStartArray();
+                while (userRows.next()) {
+                    lastId = userRows.getInt("user_id");
+                    UserJson.writeStart(generator, lastId, userRows.getString("email"), userRows.getString("login"),
+                            userRows.getString("name"), userRows.getDate("birthday").toLocalDate());
+                    generator.writeStartArray();
+                    for (; friendCursor.at(lastId); friendCursor.next()) {
+                        generator.writeNumber(friendCursor.value());
+                    }
+                    generator.writeEndArray();
+                    generator.writeEndObject();
+                    count++;
+                }
+                generator.writeEndArray();
+                return count == size ? lastId : null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     @Override
@@ -95,6 +234,7 @@ public class UserDbStorage implements UserStorage {
             log.info("Нельзя добавить в друзья одного и того же человека дважды!");
             throw new DuplicateDataException("Нельзя добавить в друзья одного и того же человека дважды!");
         }
+        indexFriends(userId, Set.of(friendId), Set.of());
         return getUserById(userId);
     }
 
@@ -107,55 +247,186 @@ public class UserDbStorage implements UserStorage {
             log.info("Пользователя с id {} нет в друзьях у пользователя с id {}", userId, friendId);
             throw new SmthNotFoundException("Пользователя с id " + userId + " нет в друзьях у пользователя с id " + friendId);
         }
+        indexFriends(userId, Set.of(), Set.of(friendId));
         return getUserById(userId);
     }
 
+    @Override
+    @Transactional
+    public void addFriends(List<Friendship> friendships) {
+        if (friendships.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+                "MERGE INTO relationship (user_id, friend_id) KEY (user_id, friend_id) VALUES (?,?)",
+                friendships,
+                friendships.size(),
+                (PreparedStatement ps, Friendship friendship) -> {
+                    ps.setInt(1, friendship.getUserId());
+                    ps.setInt(2, friendship.getFriendId());
+                });
+        List<Friendship> added = List.copyOf(friendships);
+        afterCommit(() -> added.forEach(friendship -> friendIndex.add(friendship.getUserId(), friendship.getFriendId())));
+    }
+
     @Override
     public List<Integer> getFriends(int id) {
         checkUserId(id);
-        String sqlQuery = "SELECT friend_id FROM relationship WHERE user_id=?";
-        return jdbcTemplate.query(sqlQuery, (rs1, rowNum1) -> rs1.getInt("friend_id"), id);
+        return Arrays.stream(friendIndex.getFriends(id)).boxed().collect(Collectors.toList());
+    }
+
+    // Один запрос неизменного вида при любом числе друзей; их друзья берутся из индекса дружбы
+    @Override
+    public List<User> getFriendUsers(int id) {
+        checkUserId(id);
+        String sqlQuery = "SELECT u.* FROM relationship r JOIN users u ON u.user_id = r.friend_id "
+                + "WHERE r.user_id = ? ORDER BY u.user_id";
+        List<User> users = jdbcTemplate.query(sqlQuery, this::makeUser, id);
+        users.forEach(user -> user.getFriends().addAll(friendIndex.getFriends(user.getId())));
+        return users;
+    }
+
+    @Override
+    public void forEachFriendship(IdPairConsumer action) {
+        String sqlQuery = "SELECT user_id, friend_id FROM relationship";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sqlQuery);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(rs.getInt("user_id"), rs.getInt("friend_id")));
+    }
+
+    @Override
+    public List<User> getMutualFriends(int userId, int otherId) {
+        checkUserId(userId);
+        checkUserId(otherId);
+        return loadUsers(friendIndex.getMutualFriends(userId, otherId));
+    }
+
+    @Override
+    public List<User> getUsersByIds(Collection<Integer> ids) {
+        return loadUsers(ids.stream().mapToInt(Integer::intValue).distinct().toArray());
     }
 
     private User makeUser(ResultSet rs, int rowNum) throws SQLException {
-        User user = User.builder()
+        return User.builder()
                 .id(rs.getInt("user_id"))
                 .email(rs.getString("email"))
                 .login(rs.getString("login"))
                 .name(rs.getString("name"))
                 .birthday(rs.getDate("birthday").toLocalDate())
                 .build();
+    }
+
+    private static PreparedStatement prepareStream(Connection connection, String sqlQuery, Object... args)
+            throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sqlQuery);
+        ps.setFetchSize(STREAM_FETCH_SIZE);
+        for (int i = 0; i < args.length; i++) {
+            ps.setObject(i + 1, args[i]);
+        }
+        return ps;
+    }
+
+    private List<User> fillFriends(List<User> users, String condition, Object... args) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        Map<Integer, User> usersById = new HashMap<>();
+        users.forEach(user -> usersById.put(user.getId(), user));
+
+        // В порядке возрастания SortedIntSet дописывает друзей в конец массива, без сдвигов
+        String sqlQuery = "SELECT user_id, friend_id FROM relationship" + condition + " ORDER BY user_id, friend_id";
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) rs -> {
+            User user = usersById.get(rs.getInt("user_id"));
+            if (user != null) {
+                user.getFriends().add(rs.getInt("friend_id"));
+            }
+        }, args);
+        return users;
+    }
+
+    private List<User> loadUsers(int[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        String sqlQuery = "SELECT * FROM users" + inCondition(ids.length) + " ORDER BY user_id";
+        List<User> users = jdbcTemplate.query(sqlQuery, this::makeUser, Arrays.stream(ids).boxed().toArray());
+        users.forEach(user -> user.getFriends().addAll(friendIndex.getFriends(user.getId())));
+        return users;
+    }
+
+    private void indexFriends(int userId, Collection<Integer> addedFriendIds, Collection<Integer> removedFriendIds) {
+        if (addedFriendIds.isEmpty() && removedFriendIds.isEmpty()) {
+            return;
+        }
+        List<Integer> added = List.copyOf(addedFriendIds);
+        List<Integer> removed = List.copyOf(removedFriendIds);
+        afterCommit(() -> {
+            added.forEach(friendId -> friendIndex.add(userId, friendId));
+            removed.forEach(friendId -> friendIndex.remove(userId, friendId));
+        });
+    }
 
-        String sqlQuery = "SELECT friend_id FROM relationship WHERE user_id=?";
-        user.getFriends().addAll(jdbcTemplate.query(
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void batchFriends(String sqlQuery, int userId, Collection<Integer> friendIds) {
+        if (friendIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
                 sqlQuery,
-                (rs1, rowNum1) -> rs1.getInt("friend_id"),
-                user.getId())
-        );
-        return user;
+                friendIds,
+                friendIds.size(),
+                (PreparedStatement ps, Integer friendId) -> {
+                    ps.setInt(1, userId);
+                    ps.setInt(2, friendId);
+                });
+    }
+
+    private void flushChunk(List<User> chunk, Consumer<User> action) {
+        fillFriends(chunk, inCondition(chunk.size()), idsOf(chunk)).forEach(action);
+        chunk.clear();
+    }
+
+    private Object[] idsOf(List<User> users) {
+        return users.stream().map(User::getId).toArray();
+    }
+
+    private String inCondition(int size) {
+        return " WHERE user_id IN (" + String.join(",", Collections.nCopies(size, "?")) + ")";
     }
 
-    private void checkUserId(int userId) {
-        if (!databaseContainsUser(userId)) {
-            log.error("Пользователь с id {} не существует!", userId);
-            throw new SmthNotFoundException("Пользователь с id " + userId + " не существует!");
+    @Override
+    public void checkUserId(int userId) {
+        if (userIds.contains(userId)) {
+            return;
+        }
+        if (databaseContainsUser(userId)) {
+            userIds.add(userId);
+            return;
         }
+        log.error("Пользователь с id {} не существует!", userId);
+        throw new SmthNotFoundException("Пользователь с id " + userId + " не существует!");
     }
 
     private boolean databaseContainsUser(int userId) {
-        String sqlQuery = "SELECT * FROM users WHERE user_id=?";
-        try {
-            jdbcTemplate.queryForObject(sqlQuery, this::makeUser, userId);
-            return true;
-        } catch (EmptyResultDataAccessException e) {
-            return false;
-        }
+        String sqlQuery = "SELECT EXISTS (SELECT 1 FROM users WHERE user_id=?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sqlQuery, Boolean.class, userId));
     }
 
     private int addUserToDb(User user) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("users")
-                .usingGeneratedKeyColumns("user_id");
-        return simpleJdbcInsert.executeAndReturnKey(user.toMap()).intValue();
+        return userInsert.executeAndReturnKey(user.toMap()).intValue();
     }
 }
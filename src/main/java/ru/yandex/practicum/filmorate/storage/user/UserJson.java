@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+// Запись пользователя в JSON в том же виде и порядке полей, что и сериализация модели User
+final class UserJson {
+    private UserJson() {
+    }
+
+    static void write(JsonGenerator generator, User user) throws IOException {
+        writeStart(generator, user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+        generator.writeArray(user.getFriends().toIntArray(), 0, user.getFriends().size());
+        generator.writeEndObject();
+    }
+
+    // Оставляет открытым поле friends: следом пишется массив id друзей и закрывается объект
+    static void writeStart(JsonGenerator generator, int id, String email, String login, String name,
+                           LocalDate birthday) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", id);
+        generator.writeStringField("email", email);
+        generator.writeStringField("login", login);
+        generator.writeStringField("name", name);
+        if (birthday == null) {
+            generator.writeNullField("birthday");
+        } else {
+            generator.writeStringField("birthday", birthday.toString());
+        }
+        generator.writeFieldName("friends");
+    }
+}
@@ -1,21 +1,49 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.IdPairConsumer;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     User createUser(User user);
 
+    List<User> createUsers(List<User> users);
+
     User updateUser(User user);
 
     User getUserById(int userId);
 
     List<User> getAllUsers();
 
+    List<User> getUsers(int afterId, int size);
+
+    void forEachUser(Consumer<User> action);
+
+    // Пишет JSON-массив пользователей с id больше afterId, не больше size штук; возвращает id последнего,
+    // если страница заполнена целиком, иначе null
+    Integer writeUsers(int afterId, int size, JsonGenerator generator);
+
+    void checkUserId(int userId);
+
     User addFriend(int userId, int friendId);
 
     User removeFriend(int userId, int friendId);
 
+    void addFriends(List<Friendship> friendships);
+
     List<Integer> getFriends(int id);
+
+    // Друзья пользователя целиком, с их собственными списками друзей, по возрастанию id
+    List<User> getFriendUsers(int id);
+
+    void forEachFriendship(IdPairConsumer action);
+
+    List<User> getMutualFriends(int userId, int otherId);
+
+    List<User> getUsersByIds(Collection<Integer> ids);
 }
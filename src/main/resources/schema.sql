@@ -35,16 +35,23 @@ create table IF NOT EXISTS films
 	description varchar(200),
 	release_date DATE,
 	duration int CHECK (duration > 0),
-	mpa_id int REFERENCES mpa(mpa_id) ON DELETE RESTRICT
+	mpa_id int REFERENCES mpa(mpa_id) ON DELETE RESTRICT,
+	likes_count int DEFAULT 0 NOT NULL
 );
 
+CREATE INDEX IF NOT EXISTS idx_films_popularity ON films (likes_count DESC, film_id);
+
 CREATE TABLE IF NOT EXISTS likes
 (
 	film_id int REFERENCES films(film_id) ON DELETE CASCADE,
 	user_id int REFERENCES users(user_id) ON DELETE CASCADE,
+	created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
 	PRIMARY KEY (user_id, film_id)
 );
 
+CREATE INDEX IF NOT EXISTS idx_likes_film ON likes (film_id, user_id);
+CREATE INDEX IF NOT EXISTS idx_likes_created ON likes (created_at);
+
 CREATE TABLE IF NOT EXISTS genre
 (
 	genre_id int GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -54,5 +61,6 @@ CREATE TABLE IF NOT EXISTS genre
 CREATE TABLE IF NOT EXISTS film_genre
 (
 	film_id int REFERENCES films(film_id) ON DELETE CASCADE,
-	genre_id int REFERENCES genre(genre_id) ON DELETE CASCADE
+	genre_id int REFERENCES genre(genre_id) ON DELETE CASCADE,
+	PRIMARY KEY (film_id, genre_id)
 );
\ No newline at end of file
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class SqlStatsDataSourceTest {
+    private final DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void beforeEach() {
+        jdbcTemplate = new JdbcTemplate(new SqlStatsDataSource(dataSource));
+    }
+
+    @AfterEach
+    public void afterEach() {
+        SqlStats.stop();
+    }
+
+    @Test
+    public void shouldCountStatementsAndRowsInsideRequest() {
+        SqlStats stats = SqlStats.start();
+
+        List<String> names = jdbcTemplate.queryForList("SELECT mpa_name FROM mpa ORDER BY mpa_id", String.class);
+        jdbcTemplate.update("UPDATE mpa SET mpa_name = mpa_name WHERE mpa_id <= ?", 2);
+        jdbcTemplate.batchUpdate("UPDATE mpa SET mpa_name = mpa_name WHERE mpa_id = 1", "UPDATE mpa SET mpa_name = mpa_name");
+
+        assertEquals(5, names.size());
+        assertEquals(3, stats.getStatements());
+        assertEquals(5 + 2 + 1 + 5, stats.getRows());
+    }
+
+    @Test
+    public void shouldNotCountOutsideRequest() {
+        SqlStats stats = SqlStats.start();
+        SqlStats.stop();
+
+        jdbcTemplate.queryForList("SELECT mpa_name FROM mpa", String.class);
+
+        assertEquals(0, stats.getStatements());
+        assertEquals(0, stats.getRows());
+    }
+}
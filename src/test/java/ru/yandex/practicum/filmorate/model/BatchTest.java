@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BatchTest {
+    @Test
+    public void shouldKeepRequestOrderAndReportMissingIds() {
+        List<Mpa> found = List.of(new Mpa(1, "G"), new Mpa(3, "PG-13"), new Mpa(5, "NC-17"));
+
+        Batch<Mpa> batch = Batch.of(List.of(5, 4, 1, 5, 3, 9), found, Mpa::getId);
+
+        assertEquals(List.of(new Mpa(5, "NC-17"), new Mpa(1, "G"), new Mpa(3, "PG-13")), batch.getItems());
+        assertEquals(List.of(4, 9), batch.getMissingIds());
+    }
+}
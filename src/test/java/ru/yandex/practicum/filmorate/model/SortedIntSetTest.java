@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SortedIntSetTest {
+
+    @Test
+    public void shouldBehaveLikeTreeSet() {
+        Random random = new Random(17);
+        SortedIntSet set = new SortedIntSet();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 20000; i++) {
+            int id = random.nextInt(500);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(id), set.add(id));
+            } else {
+                assertEquals(expected.remove(id), set.remove(id));
+            }
+        }
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+        assertEquals(expected.hashCode(), set.hashCode());
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), set.toIntArray());
+
+        assertTrue(set.addAll(List.of(1000, 999, 1000)));
+        assertFalse(set.addAll(999, 1000));
+        assertTrue(set.contains(999));
+        Iterator<Integer> iterator = set.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+        assertTrue(set.stream().allMatch(id -> id % 2 == 1));
+    }
+
+    @Test
+    public void shouldKeepJsonWireFormat() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        User user = User.builder().email("mail@mail.ru").login("login").build();
+        user.getFriends().addAll(Set.of(7, 3, 5));
+
+        String json = mapper.writeValueAsString(user);
+        assertThat(json).contains("\"friends\":[3,5,7]");
+
+        SortedIntSet friends = mapper.readValue("[7,3,5,3]", SortedIntSet.class);
+        assertEquals(new HashSet<>(List.of(3, 5, 7)), friends);
+    }
+}
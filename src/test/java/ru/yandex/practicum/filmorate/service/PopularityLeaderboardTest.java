@@ -0,0 +1,150 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.PopularityCheck;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PopularityLeaderboardTest {
+    private FilmStorage filmStorage;
+    private PopularityLeaderboard leaderboard;
+    private int first;
+    private int second;
+    private int third;
+
+    @BeforeEach
+    public void beforeEach() {
+        filmStorage = new InMemoryFilmStorage();
+        first = filmStorage.createFilm(film(1)).getId();
+        second = filmStorage.createFilm(film(2)).getId();
+        filmStorage.addLikes(List.of(new Like(1, second), new Like(2, second), new Like(1, first)));
+        leaderboard = new PopularityLeaderboard(filmStorage);
+        leaderboard.rebuild();
+    }
+
+    @Test
+    public void shouldFollowLikeAndFilmEvents() {
+        assertArrayEquals(new int[]{second, first}, leaderboard.top(10));
+
+        third = filmStorage.createFilm(film(3)).getId();
+        leaderboard.onFilmChanged(new FilmEvent(filmStorage.getFilmById(third)));
+        like(3, first, true);
+        like(4, first, true);
+        like(1, second, false);
+
+        assertArrayEquals(new int[]{first, second, third}, leaderboard.top(10));
+        assertArrayEquals(new int[]{first}, leaderboard.top(1));
+        assertTrue(leaderboard.verify().isConsistent());
+    }
+
+    @Test
+    public void shouldKeepGenreMpaAndYearRankingsInSync() {
+        Film drama = film(3);
+        drama.getGenres().add(new Genre(2, "Драма"));
+        drama.setMpa(new Mpa(3, "PG-13"));
+        drama.setReleaseDate(LocalDate.of(1999, 5, 1));
+        third = filmStorage.createFilm(drama).getId();
+        leaderboard.onFilmChanged(new FilmEvent(filmStorage.getFilmById(third)));
+        like(3, third, true);
+
+        assertArrayEquals(new int[]{third}, leaderboard.top(10, 2, null, null).orElseThrow());
+        assertArrayEquals(new int[]{third}, leaderboard.top(10, 2, 3, 1999).orElseThrow());
+        assertArrayEquals(new int[]{third}, leaderboard.top(Integer.MAX_VALUE, 2, 3, 1999).orElseThrow());
+        assertArrayEquals(new int[]{second, first}, leaderboard.top(10, null, 1, 2000).orElseThrow());
+        assertArrayEquals(new int[0], leaderboard.top(10, 2, 1, null).orElseThrow());
+        assertArrayEquals(new int[0], leaderboard.top(10, 5, null, null).orElseThrow());
+
+        // Фильм сменил год и рейтинг MPA и переходит в новые рейтинги со своим числом оценок
+        Film moved = filmStorage.getFilmById(first);
+        moved.setMpa(new Mpa(3, "PG-13"));
+        moved.setReleaseDate(LocalDate.of(1999, 1, 1));
+        leaderboard.onFilmChanged(new FilmEvent(filmStorage.updateFilm(moved)));
+        like(2, first, true);
+
+        assertArrayEquals(new int[]{first, third}, leaderboard.top(10, null, 3, 1999).orElseThrow());
+        assertArrayEquals(new int[]{second}, leaderboard.top(10, null, null, 2000).orElseThrow());
+        assertArrayEquals(new int[]{second}, leaderboard.top(10, null, 1, null).orElseThrow());
+    }
+
+    @Test
+    public void shouldReportAndRepairDrift() {
+        // Оценки записаны мимо событий, рейтинг о них не знает
+        filmStorage.addLikes(List.of(new Like(2, first), new Like(3, first)));
+
+        PopularityCheck check = leaderboard.verify();
+
+        assertFalse(check.isConsistent());
+        assertEquals(2, check.getCheckedFilms());
+        assertEquals(List.of(new PopularityCheck.Mismatch(first, 1, 3)), check.getMismatches());
+        assertArrayEquals(new int[]{first, second}, leaderboard.top(10));
+        assertTrue(leaderboard.verify().isConsistent());
+    }
+
+    @Test
+    public void shouldResyncImportedFilms() {
+        filmStorage.addLikes(List.of(new Like(2, first), new Like(3, first)));
+
+        leaderboard.resync(List.of(first));
+
+        assertArrayEquals(new int[]{first, second}, leaderboard.top(10));
+        assertTrue(leaderboard.verify().isConsistent());
+    }
+
+    @Test
+    public void shouldMoveFilmBeforeEntityVersionChanges() {
+        AtomicReference<int[]> topWhenTagged = new AtomicReference<>();
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        // EntityVersions регистрируется первым, порядок слушателей задают только аннотации
+        context.registerBean(EntityVersions.class, () -> new EntityVersions() {
+            @Override
+            public void onLike(LikeEvent event) {
+                topWhenTagged.set(leaderboard.top(1));
+                super.onLike(event);
+            }
+        });
+        context.registerBean(PopularityLeaderboard.class, () -> leaderboard);
+        context.refresh();
+        try {
+            filmStorage.removeLike(1, second);
+            context.publishEvent(new LikeEvent(1, second, false));
+        } finally {
+            context.close();
+        }
+
+        assertArrayEquals(new int[]{first}, topWhenTagged.get());
+    }
+
+    private void like(int userId, int filmId, boolean liked) {
+        if (liked) {
+            filmStorage.addLike(userId, filmId);
+        } else {
+            filmStorage.removeLike(userId, filmId);
+        }
+        leaderboard.onLike(new LikeEvent(userId, filmId, liked));
+    }
+
+    private static Film film(int i) {
+        return Film.builder()
+                .name("Фильм " + i)
+                .description("Описание")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(new Mpa(1, "G"))
+                .build();
+    }
+}
@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import ru.yandex.practicum.filmorate.metrics.SqlStats;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StorageExecutorTest {
+    private StorageExecutor executor;
+
+    @AfterEach
+    public void afterEach() {
+        SqlStats.stop();
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldRunTasksWithCallerSqlStats() throws Exception {
+        executor = create(1, 1, 1000);
+        SqlStats stats = SqlStats.start();
+
+        assertSame(stats, executor.supply(SqlStats::current).get());
+    }
+
+    @Test
+    public void shouldRejectWhenQueueIsFullAndTimeOutSlowTasks() throws Exception {
+        executor = create(1, 1, 200);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = executor.supply(() -> await(release));
+        CompletableFuture<Boolean> queued = executor.supply(() -> await(release));
+
+        assertThrows(RejectedExecutionException.class, () -> executor.supply(() -> true));
+        ExecutionException timeout = assertThrows(ExecutionException.class, running::get);
+        assertInstanceOf(TimeoutException.class, timeout.getCause());
+        assertThrows(ExecutionException.class, queued::get);
+        release.countDown();
+    }
+
+    @Test
+    public void shouldInterruptTasksThatTimedOut() throws Exception {
+        executor = create(1, 1, 200);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = executor.supply(() -> {
+            boolean released = await(new CountDownLatch(1));
+            if (Thread.currentThread().isInterrupted()) {
+                interrupted.countDown();
+            }
+            return released;
+        });
+
+        assertThrows(ExecutionException.class, running::get);
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertTrue(executor.supply(() -> true).get());
+    }
+
+    private static StorageExecutor create(int poolSize, int queueCapacity, long timeoutMs) {
+        return new StorageExecutor(poolSize, queueCapacity, timeoutMs,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -1,25 +1,47 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
 import ru.yandex.practicum.filmorate.exception.DuplicateDataException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.LikeBuffer;
+import ru.yandex.practicum.filmorate.service.LikeEvent;
+import ru.yandex.practicum.filmorate.service.TrendingFilms;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.CachedGenreStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.CachedMpaStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -38,7 +60,7 @@ public class FilmDbStorageTest {
 
     @BeforeEach
     public void beforeEach() {
-        filmStorage = new FilmDbStorage(jdbcTemplate);
+        filmStorage = createFilmStorage(jdbcTemplate);
         userStorage = new UserDbStorage(jdbcTemplate);
         film = Film.builder()
                 .name("Джентльмены")
@@ -65,6 +87,14 @@ public class FilmDbStorageTest {
         userStorage.createUser(user);
     }
 
+    private FilmStorage createFilmStorage(JdbcTemplate jdbcTemplate) {
+        CachedGenreStorage genreStorage = new CachedGenreStorage(new GenreDbStorage(jdbcTemplate));
+        CachedMpaStorage mpaStorage = new CachedMpaStorage(new MpaDbStorage(jdbcTemplate));
+        genreStorage.load();
+        mpaStorage.load();
+        return new FilmDbStorage(jdbcTemplate, genreStorage, mpaStorage);
+    }
+
     @Test
     public void shouldCreateFilm() {
         Film savedFilm = filmStorage.getFilmById(film.getId());
@@ -152,6 +182,25 @@ public class FilmDbStorageTest {
         assertEquals(exception.getMessage(), "Пользователь с id " + user.getId() + " не ставил оценку фильму с id " + film.getId());
     }
 
+    @Test
+    public void shouldLoadRecentLikesIntoTrendingCounters() {
+        filmStorage.addLike(user.getId(), film.getId());
+        filmStorage.addLike(user.getId(), film2.getId());
+        jdbcTemplate.update("UPDATE likes SET created_at = DATEADD('DAY', -2, created_at) WHERE film_id=?",
+                film2.getId());
+
+        List<Integer> recentFilmIds = new ArrayList<>();
+        filmStorage.forEachLikeSince(Instant.now().minus(Duration.ofDays(1)),
+                (createdAt, filmId) -> recentFilmIds.add(filmId));
+        TrendingFilms trendingFilms = new TrendingFilms(filmStorage);
+        trendingFilms.load();
+
+        assertEquals(List.of(film.getId()), recentFilmIds);
+        assertArrayEquals(new int[]{film.getId()}, trendingFilms.top(TrendingCounters.Window.DAY, 10));
+        assertArrayEquals(new int[]{film.getId(), film2.getId()},
+                trendingFilms.top(TrendingCounters.Window.WEEK, 10));
+    }
+
     @Test
     public void shouldGetAllFilms() {
         List<Film> savedFilms = filmStorage.getAllFilms();
@@ -169,4 +218,335 @@ public class FilmDbStorageTest {
                 .isNotNull()
                 .isEqualTo(film);
     }
+
+    @Test
+    public void shouldLoadAllFilmsWithConstantNumberOfQueries() {
+        StatementCountingDataSource dataSource = new StatementCountingDataSource(jdbcTemplate.getDataSource());
+        FilmStorage countingStorage = createFilmStorage(new JdbcTemplate(dataSource));
+
+        dataSource.reset();
+        countingStorage.getAllFilms();
+        int queriesForSmallCatalog = dataSource.getStatementCount();
+
+        for (int i = 0; i < 20; i++) {
+            Film newFilm = Film.builder()
+                    .name("Фильм " + i)
+                    .description("Описание " + i)
+                    .releaseDate(LocalDate.of(2000, 1, 1).plusDays(i))
+                    .duration(90 + i)
+                    .mpa(new Mpa(1, "G"))
+                    .build();
+            newFilm.getGenres().add(new Genre(1 + i % 6, null));
+            filmStorage.createFilm(newFilm);
+            filmStorage.addLike(user.getId(), newFilm.getId());
+        }
+        dataSource.reset();
+        List<Film> savedFilms = countingStorage.getAllFilms();
+
+        assertEquals(22, savedFilms.size());
+        assertEquals(queriesForSmallCatalog, dataSource.getStatementCount());
+        assertThat(savedFilms.get(2).getLikes()).isEqualTo(Set.of(user.getId()));
+        assertEquals(1, savedFilms.get(2).getGenres().size());
+    }
+
+    @Test
+    public void shouldGetFilmsByIdsWithOneQueryPerTable() {
+        StatementCountingDataSource dataSource = new StatementCountingDataSource(jdbcTemplate.getDataSource());
+        FilmStorage countingStorage = createFilmStorage(new JdbcTemplate(dataSource));
+        film2.getGenres().add(new Genre(1, "Комедия"));
+        filmStorage.updateFilm(film2);
+        filmStorage.addLike(user.getId(), film2.getId());
+
+        dataSource.reset();
+        List<Film> savedFilms = countingStorage.getFilmsByIds(List.of(film2.getId(), 100, film.getId()));
+
+        assertEquals(3, dataSource.getStatementCount());
+        assertEquals(List.of(film.getId(), film2.getId()), filmIds(savedFilms));
+        assertThat(savedFilms.get(1).getLikes()).isEqualTo(Set.of(user.getId()));
+        assertEquals(1, savedFilms.get(1).getGenres().size());
+    }
+
+    @Test
+    public void shouldGetPopularFilmsOrderedByLikes() {
+        User user2 = User.builder()
+                .email("anna@email.ru")
+                .login("annaNew")
+                .name("Анна")
+                .birthday(LocalDate.of(1995, 7, 21))
+                .build();
+        userStorage.createUser(user2);
+        filmStorage.addLike(user.getId(), film2.getId());
+        filmStorage.addLike(user2.getId(), film2.getId());
+        filmStorage.addLike(user.getId(), film.getId());
+        filmStorage.removeLike(user.getId(), film.getId());
+
+        List<Film> popularFilms = filmStorage.getPopularFilms(10);
+
+        assertEquals(2, popularFilms.size());
+        assertEquals(film2.getId(), popularFilms.get(0).getId());
+        assertEquals(film.getId(), popularFilms.get(1).getId());
+        assertThat(popularFilms.get(0).getLikes()).isEqualTo(Set.of(user.getId(), user2.getId()));
+        assertTrue(popularFilms.get(1).getLikes().isEmpty());
+        assertEquals(1, filmStorage.getPopularFilms(1).size());
+    }
+
+    @Test
+    public void shouldGetPopularFilmsByGenreMpaAndYear() {
+        film.getGenres().add(new Genre(2, "Драма"));
+        filmStorage.updateFilm(film);
+        film2.getGenres().add(new Genre(1, "Комедия"));
+        film2.getGenres().add(new Genre(2, "Драма"));
+        filmStorage.updateFilm(film2);
+        filmStorage.addLike(user.getId(), film2.getId());
+
+        assertEquals(List.of(film2.getId(), film.getId()), filmIds(filmStorage.getPopularFilms(10, 2, null, null)));
+        assertEquals(List.of(film2.getId()), filmIds(filmStorage.getPopularFilms(10, 1, null, null)));
+        assertEquals(List.of(film2.getId()), filmIds(filmStorage.getPopularFilms(10, null, 3, null)));
+        assertEquals(List.of(film.getId()), filmIds(filmStorage.getPopularFilms(10, 2, 4, 2020)));
+        assertTrue(filmStorage.getPopularFilms(10, 1, null, 2020).isEmpty());
+        assertEquals(1, filmStorage.getPopularFilms(10, 2, null, null).get(1).getGenres().size());
+    }
+
+    @Test
+    public void shouldCheckKnownFilmIdWithoutQueries() {
+        StatementCountingDataSource dataSource = new StatementCountingDataSource(jdbcTemplate.getDataSource());
+        FilmStorage countingStorage = createFilmStorage(new JdbcTemplate(dataSource));
+        dataSource.reset();
+
+        countingStorage.checkFilmId(film.getId());
+        assertEquals(1, dataSource.getStatementCount());
+
+        countingStorage.checkFilmId(film.getId());
+        assertEquals(1, dataSource.getStatementCount());
+
+        assertThrows(SmthNotFoundException.class, () -> countingStorage.checkFilmId(111));
+    }
+
+    @Test
+    public void shouldGetFilmsPageAfterCursor() {
+        List<Film> firstPage = filmStorage.getFilms(0, 1);
+        List<Film> secondPage = filmStorage.getFilms(firstPage.get(0).getId(), 1);
+        List<Film> lastPage = filmStorage.getFilms(secondPage.get(0).getId(), 1);
+
+        assertThat(firstPage).isEqualTo(List.of(film));
+        assertThat(secondPage).isEqualTo(List.of(film2));
+        assertTrue(lastPage.isEmpty());
+    }
+
+    @Test
+    public void shouldVisitEveryFilmInIdOrder() {
+        filmStorage.addLike(user.getId(), film2.getId());
+        List<Film> visitedFilms = new ArrayList<>();
+
+        filmStorage.forEachFilm(visitedFilms::add);
+
+        assertThat(visitedFilms).isEqualTo(filmStorage.getAllFilms());
+    }
+
+    @Test
+    public void shouldVisitFilmsWithGenresButWithoutLikes() {
+        film.getGenres().add(new Genre(6, "Боевик"));
+        film.getGenres().add(new Genre(1, "Комедия"));
+        filmStorage.updateFilm(film);
+        filmStorage.addLike(user.getId(), film.getId());
+        List<Film> visitedFilms = new ArrayList<>();
+
+        filmStorage.forEachFilmWithoutLikes(visitedFilms::add);
+
+        assertThat(visitedFilms).isEqualTo(List.of(film, film2));
+        assertTrue(visitedFilms.get(0).getLikes().isEmpty());
+    }
+
+    @Test
+    public void shouldWriteSameJsonAsModelSerialization() throws Exception {
+        User user2 = userStorage.createUser(User.builder()
+                .email("igor@email.ru")
+                .login("igorNew")
+                .birthday(LocalDate.of(1994, 5, 14))
+                .build());
+        filmStorage.addLike(user2.getId(), film.getId());
+        filmStorage.addLike(user.getId(), film.getId());
+        filmStorage.addLike(user.getId(), film2.getId());
+        film.getGenres().add(new Genre(6, "Боевик"));
+        film.getGenres().add(new Genre(1, "Комедия"));
+        filmStorage.updateFilm(film);
+        // Те же настройки, что у ObjectMapper из Spring Boot
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        assertEquals(objectMapper.writeValueAsString(filmStorage.getAllFilms()),
+                writeFilms(objectMapper, 0, Integer.MAX_VALUE));
+        assertEquals(objectMapper.writeValueAsString(filmStorage.getFilms(film.getId(), 1)),
+                writeFilms(objectMapper, film.getId(), 1));
+        assertEquals("[]", writeFilms(objectMapper, film2.getId(), 1));
+    }
+
+    private String writeFilms(ObjectMapper objectMapper, int afterId, int size) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            filmStorage.writeFilms(afterId, size, generator);
+        }
+        return writer.toString();
+    }
+
+    @Test
+    public void shouldSyncFilmGenresOnUpdate() {
+        film.getGenres().add(new Genre(1, "Комедия"));
+        film.getGenres().add(new Genre(2, "Драма"));
+        filmStorage.updateFilm(film);
+
+        film.getGenres().clear();
+        film.getGenres().add(new Genre(2, "Драма"));
+        film.getGenres().add(new Genre(6, "Боевик"));
+        filmStorage.updateFilm(film);
+
+        Film savedFilm = filmStorage.getFilmById(film.getId());
+
+        assertThat(savedFilm.getGenres()).isEqualTo(Set.of(new Genre(2, "Драма"), new Genre(6, "Боевик")));
+        assertTrue(filmStorage.getFilmById(film2.getId()).getGenres().isEmpty());
+    }
+
+    @Test
+    public void shouldCreateFilmsAndLikesInBatches() {
+        Film film3 = Film.builder()
+                .name("Большой куш")
+                .description("Ещё один фильм Гая Ричи")
+                .releaseDate(LocalDate.of(2000, 8, 23))
+                .duration(104)
+                .mpa(new Mpa(4, "R"))
+                .build();
+        film3.getGenres().add(new Genre(1, "Комедия"));
+        film3.getGenres().add(new Genre(6, "Боевик"));
+
+        filmStorage.createFilms(List.of(film3));
+        List<Like> addedLikes = filmStorage.addLikes(List.of(
+                new Like(user.getId(), film3.getId()),
+                new Like(user.getId(), film3.getId()),
+                new Like(user.getId(), film2.getId())));
+
+        Film savedFilm = filmStorage.getFilmById(film3.getId());
+
+        assertEquals(List.of(new Like(user.getId(), film3.getId()), new Like(user.getId(), film2.getId())), addedLikes);
+        assertTrue(filmStorage.addLikes(List.of(new Like(user.getId(), film2.getId()))).isEmpty());
+        assertEquals(1, filmStorage.getFilmById(film2.getId()).getLikes().size());
+
+        assertEquals(3, film3.getId());
+        assertThat(savedFilm.getGenres()).isEqualTo(film3.getGenres());
+        assertThat(savedFilm.getLikes()).isEqualTo(Set.of(user.getId()));
+        assertEquals(film2.getId(), filmStorage.getPopularFilms(1).get(0).getId());
+    }
+
+    @Test
+    public void shouldCoalesceBufferedLikesAndWriteThemInOneBatch() {
+        LikeBuffer likeBuffer = new LikeBuffer(filmStorage, event -> { }, true, 1000, 10000, 200);
+
+        likeBuffer.addLike(user.getId(), film2.getId());
+        likeBuffer.addLike(user.getId(), film.getId());
+        likeBuffer.removeLike(user.getId(), film.getId());
+
+        assertThrows(DuplicateDataException.class, () -> likeBuffer.addLike(user.getId(), film2.getId()));
+        assertThrows(SmthNotFoundException.class, () -> likeBuffer.removeLike(user.getId(), film.getId()));
+        assertThrows(SmthNotFoundException.class, () -> likeBuffer.addLike(user.getId(), 111));
+        assertEquals(1, likeBuffer.getPendingCount());
+        assertTrue(filmStorage.getFilmById(film2.getId()).getLikes().isEmpty());
+
+        likeBuffer.flush();
+
+        assertEquals(0, likeBuffer.getPendingCount());
+        assertThat(filmStorage.getFilmById(film2.getId()).getLikes()).isEqualTo(Set.of(user.getId()));
+        assertEquals(film2.getId(), filmStorage.getPopularFilms(1).get(0).getId());
+
+        likeBuffer.removeLike(user.getId(), film2.getId());
+        likeBuffer.flush();
+
+        assertTrue(filmStorage.getFilmById(film2.getId()).getLikes().isEmpty());
+        likeBuffer.shutdown();
+    }
+
+    @Test
+    public void shouldKeepBufferedLikeStateAcrossFlushes() {
+        StatementCountingDataSource dataSource = new StatementCountingDataSource(jdbcTemplate.getDataSource());
+        FilmStorage countingStorage = createFilmStorage(new JdbcTemplate(dataSource));
+        List<Object> events = new ArrayList<>();
+        LikeBuffer likeBuffer = new LikeBuffer(countingStorage, events::add, true, 1000, 10000, 200);
+        likeBuffer.addLike(user.getId(), film.getId());
+        likeBuffer.flush();
+        countingStorage.checkFilmId(film2.getId());
+        events.clear();
+
+        dataSource.reset();
+        likeBuffer.removeLike(user.getId(), film.getId());
+        likeBuffer.addLike(user.getId(), film.getId());
+        likeBuffer.flush();
+
+        assertEquals(0, dataSource.getStatementCount());
+        assertTrue(events.isEmpty());
+
+        likeBuffer.addLike(user.getId(), film2.getId());
+
+        // Промах проверяет одну пару, а не загружает фильм целиком
+        assertEquals(1, dataSource.getStatementCount());
+        likeBuffer.shutdown();
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void shouldBoundBufferedLikesAndFlushThemOnShutdown() {
+        User user2 = User.builder()
+                .email("oleg@email.ru")
+                .login("olegNew")
+                .name("Олег")
+                .birthday(LocalDate.of(1991, 2, 11))
+                .build();
+        userStorage.createUser(user2);
+        LikeBuffer likeBuffer = new LikeBuffer(filmStorage, event -> { }, true, 2, 2, 200);
+
+        likeBuffer.addLike(user.getId(), film.getId());
+        likeBuffer.addLike(user.getId(), film2.getId());
+        likeBuffer.addLike(user2.getId(), film.getId());
+
+        assertTrue(likeBuffer.getPendingCount() <= 2);
+
+        likeBuffer.shutdown();
+
+        assertEquals(0, likeBuffer.getPendingCount());
+        assertThat(filmStorage.getFilmById(film.getId()).getLikes()).isEqualTo(Set.of(user.getId(), user2.getId()));
+        assertThat(filmStorage.getFilmById(film2.getId()).getLikes()).isEqualTo(Set.of(user.getId()));
+        assertEquals(film.getId(), filmStorage.getPopularFilms(1).get(0).getId());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void shouldRetryFailedBufferedLikesAndRejectWhenTheyCannotBeWritten() {
+        List<Object> events = new ArrayList<>();
+        LikeBuffer likeBuffer = new LikeBuffer(filmStorage, events::add, true, 1000, 1000, 200);
+        // Пользователя 999 нет, запись его оценки нарушает внешний ключ
+        likeBuffer.addLike(999, film.getId());
+        likeBuffer.addLike(user.getId(), film2.getId());
+
+        likeBuffer.flush();
+
+        assertEquals(List.of(new LikeEvent(user.getId(), film2.getId(), true)), events);
+        assertEquals(1, likeBuffer.getPendingCount());
+        for (int i = 0; i < 3; i++) {
+            likeBuffer.flush();
+        }
+        assertEquals(1, likeBuffer.getPendingCount());
+        likeBuffer.flush();
+        assertEquals(0, likeBuffer.getPendingCount());
+        assertEquals(1, events.size());
+        likeBuffer.shutdown();
+
+        LikeBuffer fullBuffer = new LikeBuffer(filmStorage, event -> { }, true, 1, 1, 200);
+        fullBuffer.addLike(999, film.getId());
+        fullBuffer.shutdown();
+
+        assertThrows(RejectedExecutionException.class, () -> fullBuffer.addLike(999, film2.getId()));
+        assertEquals(1, fullBuffer.getPendingCount());
+    }
+
+    private static List<Integer> filmIds(List<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FilmSearchIndexTest {
+    private FilmSearchIndex index;
+
+    @BeforeEach
+    public void beforeEach() {
+        index = new FilmSearchIndex();
+        index.put(1, "Джентльмены", "Фильм Гая Ричи");
+        index.put(2, "Великий Гэтсби", "Фильм Лурмана База");
+        index.put(3, "Ёлки", "Новогодняя комедия, почти как фильм Гая Ричи");
+    }
+
+    @Test
+    public void shouldFoldCaseAndYo() {
+        assertEquals(List.of("елки", "new", "year", "2010"), FilmSearchIndex.tokenize("ЁЛКИ: New-Year 2010!"));
+        assertArrayEquals(new int[]{3}, index.search("елки", 10));
+        assertArrayEquals(new int[]{2}, index.search("ВЕЛИКИЙ", 10));
+    }
+
+    @Test
+    public void shouldRequireEveryWordAndRankNameAboveDescription() {
+        assertArrayEquals(new int[]{1, 3}, index.search("гая ричи", 10));
+        assertArrayEquals(new int[]{1, 3}, index.search("гая ричи", Integer.MAX_VALUE));
+        assertArrayEquals(new int[]{3}, index.search("ричи комедия", 10));
+        assertArrayEquals(new int[0], index.search("ричи гэтсби", 10));
+
+        index.put(4, "Ричи", "Биография");
+        assertArrayEquals(new int[]{4, 1}, index.search("ричи", 2));
+    }
+
+    @Test
+    public void shouldFindWordsContainingQuery() {
+        assertArrayEquals(new int[]{2}, index.search("гэтсб", 10));
+        assertArrayEquals(new int[]{1}, index.search("тльм", 10));
+        // Точное слово выше, чем слово, содержащее запрос
+        index.put(4, "Сборник", "Фильмы");
+        assertArrayEquals(new int[]{1, 2, 3, 4}, index.search("фильм", 10));
+        assertArrayEquals(new int[0], index.search("ил", 10));
+    }
+
+    @Test
+    public void shouldReplaceTermsOnUpdate() {
+        index.put(2, "Гэтсби", "Экранизация");
+
+        assertArrayEquals(new int[0], index.search("великий", 10));
+        assertArrayEquals(new int[0], index.search("лурман", 10));
+        assertArrayEquals(new int[]{2}, index.search("экранизац", 10));
+
+        index.remove(2);
+        assertArrayEquals(new int[0], index.search("гэтсби", 10));
+        assertEquals(2, index.size());
+    }
+}
@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FilmSimilarityModelTest {
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    @Test
+    public void shouldRecommendFilmsByCoLikes() {
+        FilmSimilarityModel model = FilmSimilarityModel.build(likes(List.of(
+                new int[]{1, 10}, new int[]{1, 11},
+                new int[]{2, 10}, new int[]{2, 11}, new int[]{2, 12},
+                new int[]{3, 10})), pool);
+
+        assertArrayEquals(new int[]{11, 12}, model.recommend(new int[]{10}, 10));
+        assertArrayEquals(new int[]{12}, model.recommend(new int[]{10, 11}, 10));
+        assertArrayEquals(new int[]{11}, model.recommend(new int[]{10}, 1));
+        assertArrayEquals(new int[0], model.recommend(new int[]{111}, 10));
+    }
+
+    @Test
+    public void shouldRefreshChangedFilmsLikeFullBuild() {
+        List<int[]> pairs = new ArrayList<>(List.of(
+                new int[]{1, 10}, new int[]{1, 11},
+                new int[]{2, 10}, new int[]{2, 11}, new int[]{2, 12},
+                new int[]{3, 10}));
+        FilmSimilarityModel model = FilmSimilarityModel.build(likes(pairs), pool);
+
+        pairs.add(new int[]{3, 13});
+        LikeMatrix updatedLikes = likes(pairs);
+        FilmSimilarityModel refreshed = model.refresh(updatedLikes, Set.of(10, 13), pool);
+        FilmSimilarityModel rebuilt = FilmSimilarityModel.build(updatedLikes, pool);
+
+        assertArrayEquals(new int[]{11, 12, 13}, refreshed.recommend(new int[]{10}, 10));
+        assertArrayEquals(rebuilt.recommend(new int[]{10}, 10), refreshed.recommend(new int[]{10}, 10));
+        assertArrayEquals(rebuilt.recommend(new int[]{13}, 10), refreshed.recommend(new int[]{13}, 10));
+    }
+
+    @Test
+    public void shouldApplyLikeChangesLikeFullBuild() {
+        List<int[]> pairs = new ArrayList<>(List.of(
+                new int[]{1, 10}, new int[]{1, 11},
+                new int[]{2, 10}, new int[]{2, 11}, new int[]{2, 12},
+                new int[]{3, 10}));
+        LikeMatrix likes = likes(pairs);
+        Map<Long, Boolean> changes = new LinkedHashMap<>();
+        changes.put(LikeMatrix.pair(2, 11), false);
+        changes.put(LikeMatrix.pair(3, 14), true);
+        changes.put(LikeMatrix.pair(15, 10), true);
+        changes.put(LikeMatrix.pair(1, 11), true);
+        changes.put(LikeMatrix.pair(4, 12), false);
+
+        LikeMatrix updated = likes.update(changes);
+        pairs.removeIf(pair -> pair[0] == 2 && pair[1] == 11);
+        pairs.add(new int[]{3, 14});
+        pairs.add(new int[]{15, 10});
+        LikeMatrix rebuilt = likes(pairs);
+
+        assertEquals(rebuilt.getLikeCount(), updated.getLikeCount());
+        for (int id = 0; id <= 16; id++) {
+            assertArrayEquals(rebuilt.filmsOf(id), updated.filmsOf(id));
+            assertArrayEquals(rebuilt.usersOf(id), updated.usersOf(id));
+        }
+        assertArrayEquals(new int[]{1, 2, 3}, likes.usersOf(10));
+        assertArrayEquals(FilmSimilarityModel.build(rebuilt, pool).recommend(new int[]{10}, 10),
+                FilmSimilarityModel.build(updated, pool).recommend(new int[]{10}, 10));
+    }
+
+    private LikeMatrix likes(List<int[]> pairs) {
+        return LikeMatrix.build(consumer -> pairs.forEach(pair -> consumer.accept(pair[0], pair[1])));
+    }
+}
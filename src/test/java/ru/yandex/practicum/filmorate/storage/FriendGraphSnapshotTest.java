@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class FriendGraphSnapshotTest {
+
+    @Test
+    public void shouldRankNonFriendsBySharedFriends() {
+        List<int[]> friendships = List.of(
+                new int[]{1, 2}, new int[]{1, 3},
+                new int[]{4, 2}, new int[]{4, 3},
+                new int[]{5, 2},
+                new int[]{6, 3},
+                new int[]{2, 1});
+        FriendGraphSnapshot snapshot = FriendGraphSnapshot.build(
+                consumer -> friendships.forEach(pair -> consumer.accept(pair[0], pair[1])));
+
+        assertArrayEquals(new int[]{4, 5, 6}, snapshot.recommend(1, 10));
+        assertArrayEquals(new int[]{4, 5}, snapshot.recommend(1, 2));
+        assertArrayEquals(new int[0], snapshot.recommend(111, 10));
+    }
+
+    @Test
+    public void shouldMatchBruteForceOnLargeGraph() {
+        Random random = new Random(7);
+        Map<Integer, Set<Integer>> friends = new HashMap<>();
+        for (int userId = 1; userId <= 2000; userId++) {
+            Set<Integer> userFriends = new HashSet<>();
+            while (userFriends.size() < 150) {
+                int friendId = 1 + random.nextInt(2000);
+                if (friendId != userId) {
+                    userFriends.add(friendId);
+                }
+            }
+            friends.put(userId, userFriends);
+        }
+        FriendGraphSnapshot snapshot = FriendGraphSnapshot.build(consumer -> friends.forEach(
+                (userId, userFriends) -> userFriends.forEach(friendId -> consumer.accept(userId, friendId))));
+
+        for (int userId = 1; userId <= 2000; userId += 199) {
+            assertArrayEquals(bruteForce(friends, userId, 10), snapshot.recommend(userId, 10));
+        }
+    }
+
+    private int[] bruteForce(Map<Integer, Set<Integer>> friends, int userId, int limit) {
+        Set<Integer> userFriends = friends.get(userId);
+        Map<Integer, Long> scores = friends.keySet().stream()
+                .filter(candidateId -> candidateId != userId && !userFriends.contains(candidateId))
+                .collect(Collectors.toMap(candidateId -> candidateId, candidateId -> friends.get(candidateId).stream()
+                        .filter(userFriends::contains)
+                        .count()));
+        return scores.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Comparator.comparing(Map.Entry<Integer, Long>::getValue).reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .limit(limit)
+                .mapToInt(Map.Entry::getKey)
+                .toArray();
+    }
+}
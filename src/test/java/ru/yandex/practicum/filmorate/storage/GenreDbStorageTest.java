@@ -9,6 +9,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.genre.CachedGenreStorage;
 import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
 import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
 
@@ -70,4 +71,24 @@ public class GenreDbStorageTest {
                 .isNotNull()
                 .isEqualTo(genresList);
     }
+
+    @Test
+    public void shouldServeGenresFromCacheWithoutQueries() {
+        StatementCountingDataSource dataSource = new StatementCountingDataSource(jdbcTemplate.getDataSource());
+        CachedGenreStorage cachedStorage = new CachedGenreStorage(new GenreDbStorage(new JdbcTemplate(dataSource)));
+        cachedStorage.load();
+        dataSource.reset();
+
+        assertThat(cachedStorage.getAllGenres()).isEqualTo(genresList);
+        assertThat(cachedStorage.getGenreById(5)).isEqualTo(genre);
+        assertThrows(SmthNotFoundException.class, () -> cachedStorage.getGenreById(111));
+
+        assertEquals(0, dataSource.getStatementCount());
+        assertEquals(2, cachedStorage.getHits());
+        assertEquals(1, cachedStorage.getMisses());
+
+        cachedStorage.invalidate();
+        assertThat(cachedStorage.getGenreById(5)).isEqualTo(genre);
+        assertEquals(1, dataSource.getStatementCount());
+    }
 }
@@ -0,0 +1,177 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.DuplicateDataException;
+import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.InMemoryMpaStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryStorageTest {
+    private static final int THREADS = 8;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+
+    @BeforeEach
+    public void beforeEach() {
+        filmStorage = new InMemoryFilmStorage();
+        userStorage = new InMemoryUserStorage();
+    }
+
+    @Test
+    public void shouldKeepLikesAndPopularityConsistentUnderConcurrentUpdates() throws Exception {
+        List<Integer> filmIds = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            filmIds.add(filmStorage.createFilm(film(i)).getId());
+        }
+        int users = 200;
+
+        // Пользователь u оценивает фильмы с индексом меньше u % 50, а потом снимает оценку с первого из них
+        runAll(users, userId -> {
+            for (int i = 0; i < userId % filmIds.size(); i++) {
+                filmStorage.addLike(userId, filmIds.get(i));
+            }
+            if (userId % filmIds.size() > 0) {
+                filmStorage.removeLike(userId, filmIds.get(0));
+            }
+        });
+
+        for (int i = 0; i < filmIds.size(); i++) {
+            int index = i;
+            long expected = IntStream.range(0, users)
+                    .filter(userId -> index < userId % filmIds.size() && (index > 0 || userId % filmIds.size() == 0))
+                    .count();
+            assertEquals(expected, filmStorage.getFilmById(filmIds.get(i)).getLikes().size());
+        }
+        List<Film> popular = filmStorage.getPopularFilms(filmIds.size());
+        assertEquals(filmIds.size(), popular.size());
+        for (int i = 1; i < popular.size(); i++) {
+            assertTrue(popular.get(i - 1).getLikes().size() >= popular.get(i).getLikes().size());
+        }
+        assertEquals(filmIds.get(1), popular.get(0).getId());
+        assertEquals(List.of(filmIds.get(1), filmIds.get(2)), filmStorage.getLikedFilmIds(3));
+    }
+
+    @Test
+    public void shouldAllocateUniqueIdsConcurrently() throws Exception {
+        List<Integer> ids = runConcurrently(1000, i -> userStorage.createUser(user(i)).getId());
+
+        assertEquals(1000, Set.copyOf(ids).size());
+        assertEquals(1000, userStorage.getAllUsers().size());
+        assertEquals(ids.stream().sorted().limit(10).collect(Collectors.toList()),
+                userStorage.getUsers(0, 10).stream().map(User::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldBehaveLikeDbStorage() {
+        User user = userStorage.createUser(user(1));
+        User user2 = userStorage.createUser(user(2));
+        Film film = filmStorage.createFilm(film(1));
+
+        userStorage.addFriend(user.getId(), user2.getId());
+        filmStorage.addLikes(List.of(new Like(user.getId(), film.getId()), new Like(user.getId(), film.getId())));
+        userStorage.getUserById(user.getId()).getFriends().clear();
+        filmStorage.getFilmById(film.getId()).getLikes().clear();
+
+        assertEquals(List.of(user2.getId()), userStorage.getFriends(user.getId()));
+        assertTrue(userStorage.getFriends(user2.getId()).isEmpty());
+        assertThat(filmStorage.getFilmById(film.getId()).getLikes()).isEqualTo(Set.of(user.getId()));
+        assertThrows(DuplicateDataException.class, () -> userStorage.addFriend(user.getId(), user2.getId()));
+        assertThrows(DuplicateDataException.class, () -> filmStorage.addLike(user.getId(), film.getId()));
+        final SmthNotFoundException exception = assertThrows(
+                SmthNotFoundException.class,
+                () -> userStorage.removeFriend(user2.getId(), user.getId())
+        );
+        assertEquals("Пользователя с id 2 нет в друзьях у пользователя с id 1", exception.getMessage());
+    }
+
+    @Test
+    public void shouldResolveReferenceDataWithoutDatabase() {
+        FilmStorage storage = new InMemoryFilmStorage(new InMemoryGenreStorage(), new InMemoryMpaStorage());
+        Film film = film(1);
+        film.setMpa(new Mpa(3, null));
+        film.getGenres().add(new Genre(2, null));
+        Film unknownGenre = film(2);
+        unknownGenre.getGenres().add(new Genre(7, null));
+
+        int filmId = storage.createFilm(film).getId();
+
+        assertEquals(new Mpa(3, "PG-13"), storage.getFilmById(filmId).getMpa());
+        assertEquals(List.of(new Genre(2, "Драма")), new ArrayList<>(storage.getFilmById(filmId).getGenres()));
+        assertThrows(SmthNotFoundException.class, () -> storage.createFilm(unknownGenre));
+    }
+
+    private <T> List<T> runConcurrently(int tasks, TaskBody<T> body) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < tasks; i++) {
+                int task = i;
+                futures.add(executor.submit(() -> body.run(task)));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void runAll(int tasks, VoidTaskBody body) throws Exception {
+        runConcurrently(tasks, task -> {
+            body.run(task);
+            return null;
+        });
+    }
+
+    private interface TaskBody<T> {
+        T run(int task);
+    }
+
+    private interface VoidTaskBody {
+        void run(int task);
+    }
+
+    private static User user(int i) {
+        return User.builder()
+                .email("user" + i + "@email.ru")
+                .login("user" + i)
+                .name("Пользователь " + i)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+
+    private static Film film(int i) {
+        return Film.builder()
+                .name("Фильм " + i)
+                .description("Описание")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(new Mpa(1, "G"))
+                .build();
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.mpa.CachedMpaStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
 
@@ -65,4 +66,19 @@ public class MpaDbStorageTest {
 
         assertEquals(exception.getMessage(), "Тип рейтинга с id 111 не существует!");
     }
+
+    @Test
+    public void shouldServeMpasFromCacheWithoutQueries() {
+        StatementCountingDataSource dataSource = new StatementCountingDataSource(jdbcTemplate.getDataSource());
+        CachedMpaStorage cachedStorage = new CachedMpaStorage(new MpaDbStorage(new JdbcTemplate(dataSource)));
+        cachedStorage.load();
+        dataSource.reset();
+
+        assertThat(cachedStorage.getAllMpas()).isEqualTo(mpasList);
+        assertThat(cachedStorage.getMpaById(3)).isEqualTo(mpa);
+
+        assertEquals(0, dataSource.getStatementCount());
+        assertEquals(2, cachedStorage.getHits());
+        assertEquals(0, cachedStorage.getMisses());
+    }
 }
@@ -0,0 +1,312 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.CachedGenreStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.CachedMpaStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD;
+
+// Выполняет все методы хранилищ на большом наборе данных и проверяет планы всех запросов:
+// полный просмотр таблицы допустим только для запросов, которые и так читают её целиком
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = BEFORE_EACH_TEST_METHOD)
+public class QueryPlanTest {
+    private static final int USERS = 2000;
+    private static final int FILMS = 2000;
+    private static final int LIKES_PER_FILM = 20;
+    private static final int FRIENDS_PER_USER = 20;
+    private static final int PAGE_SIZE = 10;
+    private static final Pattern SCAN_COUNT = Pattern.compile("scanCount: (\\d+)");
+    private static final Set<String> FULL_SCANS = Set.of(
+            "SELECT * FROM films ORDER BY film_id",
+            "SELECT film_id, user_id FROM likes ORDER BY film_id, user_id",
+            "SELECT f.film_id, COUNT(l.user_id) FROM films f LEFT JOIN likes l ON l.film_id = f.film_id "
+                    + "GROUP BY f.film_id",
+            "SELECT film_id, genre_id FROM film_genre",
+            "SELECT film_id, genre_id FROM film_genre ORDER BY film_id, genre_id",
+            "SELECT user_id, film_id FROM likes",
+            "SELECT * FROM users ORDER BY user_id",
+            "SELECT user_id, friend_id FROM relationship ORDER BY user_id, friend_id",
+            "SELECT * FROM genre ORDER BY genre_id",
+            "SELECT * FROM mpa ORDER BY mpa_id");
+    // Запросы, ради которых индексы заведены явно
+    private static final Map<String, String> EXPECTED_INDEXES = Map.of(
+            "SELECT * FROM films ORDER BY likes_count DESC, film_id LIMIT ?", "IDX_FILMS_POPULARITY",
+            "SELECT film_id, user_id FROM likes WHERE film_id=? ORDER BY film_id, user_id", "IDX_LIKES_FILM",
+            "SELECT film_id, user_id FROM likes WHERE film_id IN (?) ORDER BY film_id, user_id", "IDX_LIKES_FILM",
+            "SELECT film_id, genre_id FROM film_genre WHERE film_id=?", "PRIMARY_KEY_",
+            "SELECT film_id, genre_id FROM film_genre WHERE film_id IN (?)", "PRIMARY_KEY_",
+            "SELECT film_id, user_id FROM likes WHERE film_id > ? AND film_id <= (SELECT MAX(film_id) FROM "
+                    + "(SELECT film_id FROM films WHERE film_id > ? ORDER BY film_id LIMIT ?)) "
+                    + "ORDER BY film_id, user_id", "IDX_LIKES_FILM",
+            "SELECT film_id, genre_id FROM film_genre WHERE film_id > ? AND film_id <= (SELECT MAX(film_id) FROM "
+                    + "(SELECT film_id FROM films WHERE film_id > ? ORDER BY film_id LIMIT ?)) "
+                    + "ORDER BY film_id, genre_id", "PRIMARY_KEY_",
+            "SELECT f.film_id, COUNT(l.user_id) FROM films f LEFT JOIN likes l ON l.film_id = f.film_id "
+                    + "WHERE f.film_id IN (?) GROUP BY f.film_id", "IDX_LIKES_FILM",
+            "SELECT film_id, created_at FROM likes WHERE created_at >= ?", "IDX_LIKES_CREATED");
+    private final JdbcTemplate jdbcTemplate;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+
+    @BeforeEach
+    public void beforeEach() {
+        filmStorage = createFilmStorage(jdbcTemplate);
+        userStorage = new UserDbStorage(jdbcTemplate);
+        seed();
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    public void shouldNotScanTablesWhereIndexIsExpected() throws Exception {
+        SqlRecordingDataSource dataSource = new SqlRecordingDataSource(jdbcTemplate.getDataSource());
+        JdbcTemplate recordingTemplate = new JdbcTemplate(dataSource);
+        exerciseFilmStorage(createFilmStorage(recordingTemplate));
+        exerciseUserStorage(new UserDbStorage(recordingTemplate));
+        exerciseGenreStorage(new GenreDbStorage(recordingTemplate));
+        exerciseMpaStorage(new MpaDbStorage(recordingTemplate));
+
+        Map<String, String> plans = explain(dataSource, "EXPLAIN ");
+        List<String> failures = new ArrayList<>();
+        plans.forEach((sql, plan) -> {
+            boolean fullScan = plan.contains(".tableScan");
+            String expectedIndex = EXPECTED_INDEXES.get(sql);
+            if (fullScan && !FULL_SCANS.contains(sql)
+                    || expectedIndex != null && !plan.contains("PUBLIC." + expectedIndex)) {
+                failures.add(sql + "\n" + plan);
+            }
+        });
+        List<String> notExecuted = new ArrayList<>(FULL_SCANS);
+        notExecuted.addAll(EXPECTED_INDEXES.keySet());
+        notExecuted.removeAll(plans.keySet());
+
+        assertTrue(failures.isEmpty(), "Запросы без ожидаемого индекса:\n" + String.join("\n\n", failures));
+        assertTrue(notExecuted.isEmpty(), "Запросы не выполнялись: " + notExecuted);
+    }
+
+    // Выборки для страницы читают строки только её фильмов и пользователей, а не всё после курсора
+    @Test
+    public void shouldReadOnlyPageRowsWhenWritingPages() throws Exception {
+        SqlRecordingDataSource dataSource = new SqlRecordingDataSource(jdbcTemplate.getDataSource());
+        JdbcTemplate recordingTemplate = new JdbcTemplate(dataSource);
+        createFilmStorage(recordingTemplate).writeFilms(0, PAGE_SIZE, generator());
+        new UserDbStorage(recordingTemplate).writeUsers(0, PAGE_SIZE, generator());
+
+        Map<String, String> plans = explain(dataSource, "EXPLAIN ANALYZE ");
+        List<String> failures = new ArrayList<>();
+        plans.forEach((sql, plan) -> {
+            if (!sql.contains(" > ?")) {
+                return;
+            }
+            Matcher matcher = SCAN_COUNT.matcher(plan);
+            while (matcher.find()) {
+                if (Integer.parseInt(matcher.group(1)) > PAGE_SIZE * Math.max(LIKES_PER_FILM, FRIENDS_PER_USER) * 2) {
+                    failures.add(sql + "\n" + plan);
+                    break;
+                }
+            }
+        });
+
+        assertTrue(plans.keySet().stream().filter(sql -> sql.contains(" > ?")).count() >= 5);
+        assertTrue(failures.isEmpty(), "Запросы читают строки за пределами страницы:\n"
+                + String.join("\n\n", failures));
+    }
+
+    private void seed() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(user(i));
+        }
+        userStorage.createUsers(users);
+        List<Friendship> friendships = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            for (int j = 1; j <= FRIENDS_PER_USER; j++) {
+                friendships.add(new Friendship(users.get(i).getId(), users.get((i + j * 7) % USERS).getId()));
+            }
+        }
+        userStorage.addFriends(friendships);
+
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < FILMS; i++) {
+            films.add(film(i));
+        }
+        filmStorage.createFilms(films);
+        List<Like> likes = new ArrayList<>();
+        for (int i = 0; i < FILMS; i++) {
+            for (int j = 0; j < LIKES_PER_FILM; j++) {
+                likes.add(new Like(users.get((i * 13 + j * 31) % USERS).getId(), films.get(i).getId()));
+            }
+        }
+        filmStorage.addLikes(likes);
+    }
+
+    private void exerciseFilmStorage(FilmStorage storage) {
+        Film film = storage.createFilm(film(FILMS));
+        storage.createFilms(List.of(film(FILMS + 1)));
+        film.getGenres().clear();
+        film.getGenres().add(new Genre(4, "Триллер"));
+        storage.updateFilm(film);
+        storage.getFilmById(film.getId());
+        storage.getAllFilms();
+        storage.getFilms(FILMS / 2, 10);
+        storage.getFilmsByIds(List.of(1, 2, 3));
+        storage.forEachFilm(f -> { });
+        storage.forEachFilmWithoutLikes(f -> { });
+        storage.writeFilms(FILMS / 2, 10, generator());
+        storage.getPopularFilms(10);
+        storage.getPopularFilms(10, 1, 1, 2001);
+        storage.checkFilmId(film.getId());
+        storage.addLike(1, film.getId());
+        storage.removeLike(1, film.getId());
+        storage.addLikes(List.of(new Like(2, film.getId())));
+        storage.updateLikes(List.of(new Like(3, film.getId())), List.of(new Like(2, film.getId())));
+        storage.hasLike(1, film.getId());
+        storage.getLikedFilmIds(1);
+        storage.forEachLike((userId, filmId) -> { });
+        storage.forEachLikeCount((filmId, count) -> { });
+        storage.forEachLikeCount(List.of(1, 2, 3), (filmId, count) -> { });
+        storage.forEachLikeSince(Instant.now().minus(Duration.ofHours(1)), (createdAt, filmId) -> { });
+    }
+
+    private void exerciseUserStorage(UserStorage storage) {
+        User user = user(USERS);
+        user.getFriends().add(1);
+        storage.createUser(user);
+        storage.createUsers(List.of(user(USERS + 1)));
+        user.getFriends().clear();
+        user.getFriends().add(2);
+        storage.updateUser(user);
+        storage.getUserById(user.getId());
+        storage.getAllUsers();
+        storage.getUsers(USERS / 2, 10);
+        storage.forEachUser(u -> { });
+        storage.writeUsers(USERS / 2, 10, generator());
+        storage.checkUserId(user.getId());
+        storage.addFriend(user.getId(), 3);
+        storage.removeFriend(user.getId(), 3);
+        storage.addFriends(List.of(new Friendship(user.getId(), 4)));
+        storage.getFriends(1);
+        storage.getFriendUsers(1);
+        storage.forEachFriendship((userId, friendId) -> { });
+        storage.getMutualFriends(1, 2);
+        storage.getUsersByIds(List.of(1, 2, 3));
+    }
+
+    private void exerciseGenreStorage(GenreStorage storage) {
+        storage.getAllGenres();
+        storage.getGenreById(1);
+    }
+
+    private void exerciseMpaStorage(MpaStorage storage) {
+        storage.getAllMpas();
+        storage.getMpaById(1);
+    }
+
+    // Списки IN (?,?,...) разной длины сводятся к одному запросу
+    private Map<String, String> explain(SqlRecordingDataSource recorded, String explain) throws Exception {
+        Map<String, String> plans = new TreeMap<>();
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            for (Map.Entry<String, List<SqlRecordingDataSource.ParameterSetter>> entry
+                    : recorded.getStatements().entrySet()) {
+                try (PreparedStatement statement = connection.prepareStatement(explain + entry.getKey())) {
+                    for (SqlRecordingDataSource.ParameterSetter parameter : entry.getValue()) {
+                        parameter.apply(statement);
+                    }
+                    try (ResultSet rs = statement.executeQuery()) {
+                        rs.next();
+                        plans.merge(normalize(entry.getKey()), rs.getString(1), (first, second) -> first + "\n" + second);
+                    }
+                }
+            }
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+        return plans;
+    }
+
+    private static JsonGenerator generator() {
+        try {
+            return new JsonFactory().createGenerator(Writer.nullWriter());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String normalize(String sql) {
+        return sql.trim().replaceAll("\\(\\?(,\\?)*\\)", "(?)");
+    }
+
+    private FilmStorage createFilmStorage(JdbcTemplate template) {
+        CachedGenreStorage genreStorage = new CachedGenreStorage(new GenreDbStorage(template));
+        CachedMpaStorage mpaStorage = new CachedMpaStorage(new MpaDbStorage(template));
+        genreStorage.load();
+        mpaStorage.load();
+        return new FilmDbStorage(template, genreStorage, mpaStorage);
+    }
+
+    private static User user(int i) {
+        return User.builder()
+                .email("user" + i + "@email.ru")
+                .login("user" + i)
+                .name("Пользователь " + i)
+                .birthday(LocalDate.of(1990, 1, 1).plusDays(i))
+                .build();
+    }
+
+    private static Film film(int i) {
+        Film film = Film.builder()
+                .name("Фильм " + i)
+                .description("Описание фильма " + i)
+                .releaseDate(LocalDate.of(2000, 1, 1).plusDays(i))
+                .duration(90 + i % 60)
+                .mpa(new Mpa(1 + i % 5, null))
+                .build();
+        film.getGenres().add(new Genre(1 + i % 6, null));
+        return film;
+    }
+}
@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Запоминает каждый выполненный SQL-запрос вместе с параметрами первого выполнения,
+// чтобы потом повторить его под EXPLAIN
+public class SqlRecordingDataSource extends DelegatingDataSource {
+    private static final Set<String> PREPARE_METHODS = Set.of("prepareStatement", "prepareCall");
+    private final Map<String, List<ParameterSetter>> statements = new LinkedHashMap<>();
+
+    public SqlRecordingDataSource(DataSource dataSource) {
+        super(new TransactionAwareDataSourceProxy(dataSource));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = super.getConnection();
+        return proxy(Connection.class, connection, (method, args, result) -> {
+            if (PREPARE_METHODS.contains(method.getName())) {
+                return recordingStatement((PreparedStatement) result, (String) args[0]);
+            }
+            if (method.getName().equals("createStatement")) {
+                return recordingStatement((Statement) result);
+            }
+            return result;
+        });
+    }
+
+    public synchronized Map<String, List<ParameterSetter>> getStatements() {
+        return new LinkedHashMap<>(statements);
+    }
+
+    private PreparedStatement recordingStatement(PreparedStatement statement, String sql) {
+        List<ParameterSetter> parameters = new ArrayList<>();
+        boolean[] executed = new boolean[1];
+        return proxy(PreparedStatement.class, statement, (method, args, result) -> {
+            String name = method.getName();
+            if (!executed[0] && name.startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer) {
+                parameters.add(new ParameterSetter(method, args));
+            } else if (!executed[0] && (name.startsWith("execute") || name.equals("addBatch"))) {
+                executed[0] = true;
+                record(sql, parameters);
+            }
+            return result;
+        });
+    }
+
+    private Statement recordingStatement(Statement statement) {
+        return proxy(Statement.class, statement, (method, args, result) -> {
+            if (method.getName().startsWith("execute") && args != null && args[0] instanceof String) {
+                record((String) args[0], List.of());
+            }
+            return result;
+        });
+    }
+
+    private synchronized void record(String sql, List<ParameterSetter> parameters) {
+        statements.putIfAbsent(sql, parameters);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, ResultHandler handler) {
+        return (T) Proxy.newProxyInstance(
+                SqlRecordingDataSource.class.getClassLoader(),
+                new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                    return handler.handle(method, args, result);
+                });
+    }
+
+    private interface ResultHandler {
+        Object handle(Method method, Object[] args, Object result) throws Exception;
+    }
+
+    public static class ParameterSetter {
+        private final Method method;
+        private final Object[] args;
+
+        private ParameterSetter(Method method, Object[] args) {
+            this.method = method;
+            this.args = args.clone();
+        }
+
+        public void apply(PreparedStatement statement) throws Exception {
+            method.invoke(statement, args);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.TrendingCounters.Window;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TrendingCountersTest {
+    private static final long START = 29_000_000L;
+    private static final long HOUR = 60;
+    private static final long DAY = 24 * HOUR;
+    private TrendingCounters counters;
+
+    @BeforeEach
+    public void beforeEach() {
+        counters = new TrendingCounters();
+        counters.advance(START);
+    }
+
+    @Test
+    public void shouldExpireLikesWindowByWindow() {
+        counters.record(1, START, 1);
+        counters.record(1, START, 1);
+        counters.record(2, START + 30, 1);
+
+        counters.advance(START + 30);
+        assertArrayEquals(new int[]{1, 2}, counters.top(Window.HOUR, 10));
+
+        counters.advance(START + HOUR);
+        assertArrayEquals(new int[]{2}, counters.top(Window.HOUR, 10));
+        assertArrayEquals(new int[]{1, 2}, counters.top(Window.DAY, 10));
+
+        counters.advance(START + 2 * DAY);
+        assertArrayEquals(new int[0], counters.top(Window.DAY, 10));
+        assertArrayEquals(new int[]{1, 2}, counters.top(Window.WEEK, 10));
+        assertEquals(2, counters.getCount(Window.WEEK, 1));
+
+        counters.advance(START + 8 * DAY);
+        assertArrayEquals(new int[0], counters.top(Window.WEEK, 10));
+        assertEquals(0, counters.size());
+    }
+
+    @Test
+    public void shouldCountUnlikesAsNegativeGrowth() {
+        counters.record(1, START, 1);
+        counters.record(2, START, 1);
+        counters.advance(START + 2 * HOUR);
+        counters.record(1, START + 2 * HOUR, -1);
+
+        assertArrayEquals(new int[0], counters.top(Window.HOUR, 10));
+        assertArrayEquals(new int[]{2}, counters.top(Window.DAY, 10));
+
+        // Оценка уходит из окна раньше снятия, но отрицательный прирост в рейтинг не попадает
+        counters.advance(START + DAY + HOUR);
+        assertArrayEquals(new int[0], counters.top(Window.DAY, 10));
+        assertArrayEquals(new int[]{2}, counters.top(Window.WEEK, 10));
+    }
+
+    @Test
+    public void shouldPlacePastLikesIntoTheirBuckets() {
+        counters.advance(START + 3 * DAY);
+        counters.record(1, START, 1);
+        counters.record(2, START + 3 * DAY - 10, 1);
+        counters.record(3, START - 5 * DAY, 1);
+
+        assertArrayEquals(new int[]{2}, counters.top(Window.HOUR, 10));
+        assertArrayEquals(new int[]{1, 2}, counters.top(Window.WEEK, 10));
+
+        counters.advance(START + 7 * DAY);
+        assertArrayEquals(new int[]{2}, counters.top(Window.WEEK, 10));
+    }
+}
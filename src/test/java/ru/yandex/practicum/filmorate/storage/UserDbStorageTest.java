@@ -1,21 +1,31 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.SmthNotFoundException;
 import ru.yandex.practicum.filmorate.exception.DuplicateDataException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Set;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -212,4 +222,152 @@ public class UserDbStorageTest {
                 .isEqualTo(List.of(2,3));
     }
 
+    @Test
+    public void shouldGetUsersPageAfterCursor() {
+        userStorage.createUser(user);
+        userStorage.createUser(user2);
+        userStorage.addFriend(user.getId(), user2.getId());
+
+        List<User> firstPage = userStorage.getUsers(0, 1);
+        List<User> secondPage = userStorage.getUsers(firstPage.get(0).getId(), 5);
+
+        assertEquals(1, firstPage.size());
+        assertThat(firstPage.get(0).getFriends()).isEqualTo(Set.of(user2.getId()));
+        assertThat(secondPage).isEqualTo(List.of(user2));
+    }
+
+    @Test
+    public void shouldWriteSameJsonAsModelSerialization() throws Exception {
+        user.setName(null);
+        userStorage.createUser(user);
+        userStorage.createUser(user2);
+        userStorage.addFriend(user.getId(), user2.getId());
+        userStorage.addFriend(user2.getId(), user.getId());
+        // Те же настройки, что у ObjectMapper из Spring Boot
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        assertEquals(objectMapper.writeValueAsString(userStorage.getAllUsers()),
+                writeUsers(objectMapper, 0, Integer.MAX_VALUE));
+        assertEquals(objectMapper.writeValueAsString(userStorage.getUsers(0, 1)),
+                writeUsers(objectMapper, 0, 1));
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(new StringWriter());
+        assertEquals(user.getId(), userStorage.writeUsers(0, 1, generator));
+        assertNull(userStorage.writeUsers(user2.getId(), 5, generator));
+    }
+
+    private String writeUsers(ObjectMapper objectMapper, int afterId, int size) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            userStorage.writeUsers(afterId, size, generator);
+        }
+        return writer.toString();
+    }
+
+    @Test
+    public void shouldSyncFriendsOnUpdate() {
+        User user3 = User.builder()
+                .email("kirill@email.ru")
+                .login("kirillNew")
+                .name("Кирилл")
+                .birthday(LocalDate.of(2002, 5, 14))
+                .build();
+        userStorage.createUser(user);
+        userStorage.createUser(user2);
+        userStorage.createUser(user3);
+        userStorage.addFriend(user.getId(), user2.getId());
+
+        user.getFriends().clear();
+        user.getFriends().add(user3.getId());
+        userStorage.updateUser(user);
+
+        assertThat(userStorage.getFriends(user.getId())).isEqualTo(List.of(user3.getId()));
+        assertEquals("Игорь", userStorage.getUserById(user2.getId()).getName());
+    }
+
+    @Test
+    public void shouldCreateUsersAndFriendshipsInBatches() {
+        userStorage.createUsers(List.of(user, user2));
+        userStorage.addFriends(List.of(
+                new Friendship(user.getId(), user2.getId()),
+                new Friendship(user.getId(), user2.getId())));
+
+        assertEquals(1, user.getId());
+        assertEquals(2, user2.getId());
+        assertThat(userStorage.getFriends(user.getId())).isEqualTo(List.of(user2.getId()));
+        assertThat(userStorage.getUserById(user2.getId()))
+                .usingRecursiveComparison()
+                .isEqualTo(user2);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void shouldGetMutualFriendsFromIndexInOneQuery() {
+        User user3 = User.builder()
+                .email("kirill@email.ru")
+                .login("kirillNew")
+                .name("Кирилл")
+                .birthday(LocalDate.of(2002, 5, 14))
+                .build();
+        userStorage.createUsers(List.of(user, user2, user3));
+        StatementCountingDataSource dataSource = new StatementCountingDataSource(jdbcTemplate.getDataSource());
+        UserStorage countingStorage = new UserDbStorage(new JdbcTemplate(dataSource));
+        countingStorage.addFriends(List.of(
+                new Friendship(user.getId(), user3.getId()),
+                new Friendship(user2.getId(), user3.getId()),
+                new Friendship(user3.getId(), user.getId())));
+        countingStorage.getMutualFriends(user.getId(), user2.getId());
+
+        dataSource.reset();
+        List<User> mutualFriends = countingStorage.getMutualFriends(user.getId(), user2.getId());
+
+        assertEquals(1, dataSource.getStatementCount());
+        assertThat(mutualFriends.get(0).getFriends()).isEqualTo(Set.of(user.getId()));
+        assertEquals(1, mutualFriends.size());
+
+        countingStorage.removeFriend(user2.getId(), user3.getId());
+        countingStorage.addFriend(user2.getId(), user.getId());
+
+        assertTrue(countingStorage.getMutualFriends(user.getId(), user2.getId()).isEmpty());
+        assertThat(countingStorage.getFriends(user2.getId())).isEqualTo(List.of(user.getId()));
+        List<User> foundUsers = countingStorage.getUsersByIds(List.of(user3.getId(), user.getId(), 111));
+        assertEquals(List.of(user.getId(), user3.getId()), List.of(foundUsers.get(0).getId(), foundUsers.get(1).getId()));
+        assertThat(foundUsers.get(1).getFriends()).isEqualTo(Set.of(user.getId()));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void shouldGetFriendUsersInOneQuery() {
+        User user3 = User.builder()
+                .email("kirill@email.ru")
+                .login("kirillNew")
+                .name("Кирилл")
+                .birthday(LocalDate.of(2002, 5, 14))
+                .build();
+        userStorage.createUsers(List.of(user, user2, user3));
+        StatementCountingDataSource dataSource = new StatementCountingDataSource(jdbcTemplate.getDataSource());
+        UserStorage countingStorage = new UserDbStorage(new JdbcTemplate(dataSource));
+        countingStorage.addFriends(List.of(
+                new Friendship(user.getId(), user3.getId()),
+                new Friendship(user.getId(), user2.getId()),
+                new Friendship(user3.getId(), user.getId())));
+        countingStorage.getFriendUsers(user.getId());
+
+        dataSource.reset();
+        List<User> friends = countingStorage.getFriendUsers(user.getId());
+
+        assertEquals(1, dataSource.getStatementCount());
+        assertEquals(List.of(user2.getId(), user3.getId()), List.of(friends.get(0).getId(), friends.get(1).getId()));
+        assertThat(friends.get(0).getFriends()).isEqualTo(Set.of());
+        assertThat(friends.get(1).getFriends()).isEqualTo(Set.of(user.getId()));
+
+        countingStorage.addFriend(user2.getId(), user3.getId());
+        dataSource.reset();
+        friends = countingStorage.getFriendUsers(user.getId());
+
+        assertEquals(1, dataSource.getStatementCount());
+        assertThat(friends.get(0).getFriends()).isEqualTo(Set.of(user3.getId()));
+        assertTrue(countingStorage.getFriendUsers(user2.getId()).stream().allMatch(friend -> friend.getId() == user3.getId()));
+    }
 }